@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout.benchmark;
+
+import com.truizlop.fabreveallayout.CurvedAnimator;
+import com.truizlop.fabreveallayout.CurvedPath;
+import com.truizlop.fabreveallayout.Point;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One-off cost paid when a FAB path is (re)built, i.e. on the first reveal and after the
+ * layout geometry changes.
+ */
+@State(Scope.Thread)
+public class CurvedAnimatorBenchmark {
+
+    private CurvedAnimator curvedAnimator;
+    private CurvedPath path;
+    private Point startValue, endValue;
+
+    @Setup
+    public void setUp() {
+        curvedAnimator = new CurvedAnimator(980, 56, 540, 320);
+        Object[] points = curvedAnimator.getPoints();
+        startValue = (Point) points[0];
+        endValue = (Point) points[1];
+        path = new CurvedPath(startValue, endValue);
+    }
+
+    @Benchmark
+    public CurvedAnimator construct() {
+        return new CurvedAnimator(980, 56, 540, 320);
+    }
+
+    @Benchmark
+    public Object[] getPoints() {
+        return curvedAnimator.getPoints();
+    }
+
+    @Benchmark
+    public CurvedPath bakePath() {
+        path.set(startValue, endValue);
+        return path;
+    }
+}
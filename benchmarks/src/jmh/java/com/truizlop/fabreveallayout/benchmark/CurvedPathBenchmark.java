@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout.benchmark;
+
+import com.truizlop.fabreveallayout.CurvedAnimator;
+import com.truizlop.fabreveallayout.CurvedPath;
+import com.truizlop.fabreveallayout.Point;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-frame cost of positioning a FAB on its path. This is the whole body of
+ * {@code CurvedPathEvaluator.evaluate}, which only adds the {@code TypeEvaluator} glue.
+ */
+@State(Scope.Thread)
+public class CurvedPathBenchmark {
+
+    private CurvedPath path;
+    private Point out;
+    private float fraction;
+
+    @Setup
+    public void setUp() {
+        Object[] points = new CurvedAnimator(980, 56, 540, 320).getPoints();
+        path = new CurvedPath((Point) points[0], (Point) points[1]);
+        out = new Point(0, 0);
+    }
+
+    private float nextFraction() {
+        fraction += 1 / 60f;
+        if (fraction > 1) {
+            fraction = 0;
+        }
+        return fraction;
+    }
+
+    @Benchmark
+    public Point evaluate() {
+        path.evaluateAtDistance(nextFraction(), out);
+        return out;
+    }
+
+    @Benchmark
+    public Point evaluateReverse() {
+        path.evaluateAtDistance(1 - nextFraction(), out);
+        return out;
+    }
+
+    @Benchmark
+    public Point evaluateRawParameter() {
+        path.evaluate(nextFraction(), out);
+        return out;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout.benchmark;
+
+import com.truizlop.fabreveallayout.FABGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Sizing and placement math run by {@code FABRevealLayout} on layout, for a growing number
+ * of FABs.
+ */
+@State(Scope.Thread)
+public class FABGeometryBenchmark {
+
+    private static final int AVAILABLE_PX = 1080;
+    private static final int PADDING_PX = 48;
+    private static final int MAX_SIZE_PX = 168;
+    private static final int FIRST_MARGIN_PX = 60;
+    private static final int SPACING_PX = 24;
+
+    @Param({"1", "4", "16"})
+    public int fabCount;
+
+    @Benchmark
+    public int calculateFabOptimalSize() {
+        return FABGeometry.calculateFabOptimalSize(AVAILABLE_PX, fabCount, PADDING_PX, MAX_SIZE_PX);
+    }
+
+    @Benchmark
+    public int setupFABPosition() {
+        int fabSizePx = FABGeometry.calculateFabOptimalSize(AVAILABLE_PX, fabCount, PADDING_PX, MAX_SIZE_PX);
+        int offsets = 0;
+        for (int i = 0; i < fabCount; i++) {
+            offsets += FABGeometry.calculateFabOffset(i, fabSizePx, FIRST_MARGIN_PX, SPACING_PX);
+        }
+        return offsets;
+    }
+}
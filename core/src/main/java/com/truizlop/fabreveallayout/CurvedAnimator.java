@@ -24,10 +24,12 @@ public class CurvedAnimator {
 
     public CurvedAnimator(float fromX, float fromY, float toX, float toY){
         points.add(new Point(fromX, fromY));
+        // Both Y control points sit on the target, so the FAB eases into its final height
+        // without overshooting it while X swings out and back
         points.add(new Point(Math.max(fromX, toX)*1.5f,
-                (toY + fromY)/2,
+                toY,
                 (toX + fromX)/2,
-                Math.max(fromY, toY)*2.25f,
+                toY,
                 toX,
                 toY));
     }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+/**
+ * Cubic Bezier segment with its polynomial coefficients computed once, so that evaluating
+ * a position on every animation frame is a handful of multiplications and never allocates.
+ *
+ * The segment is also baked into an arc-length table, which allows sampling it by the
+ * fraction of distance travelled instead of by the raw curve parameter. Sampling by
+ * distance keeps the on-screen speed of the FAB constant along the whole curve.
+ */
+public class CurvedPath {
+
+    protected static final int ARC_LENGTH_SAMPLES = 32;
+
+    protected float ax, bx, cx, dx;
+    protected float ay, by, cy, dy;
+    protected final float[] arcLengths = new float[ARC_LENGTH_SAMPLES + 1];
+    protected Point startValue = null, endValue = null;
+
+    public CurvedPath(Point startValue, Point endValue) {
+        set(startValue, endValue);
+    }
+
+    public void set(Point startValue, Point endValue) {
+        this.startValue = startValue;
+        this.endValue = endValue;
+
+        ax = endValue.x - 3 * endValue.control1X + 3 * endValue.control0X - startValue.x;
+        bx = 3 * (endValue.control1X - 2 * endValue.control0X + startValue.x);
+        cx = 3 * (endValue.control0X - startValue.x);
+        dx = startValue.x;
+
+        ay = endValue.y - 3 * endValue.control1Y + 3 * endValue.control0Y - startValue.y;
+        by = 3 * (endValue.control1Y - 2 * endValue.control0Y + startValue.y);
+        cy = 3 * (endValue.control0Y - startValue.y);
+        dy = startValue.y;
+
+        bakeArcLengths();
+    }
+
+    private void bakeArcLengths() {
+        float length = 0;
+        float lastX = dx, lastY = dy;
+        arcLengths[0] = 0;
+        for (int i = 1; i <= ARC_LENGTH_SAMPLES; i++) {
+            float t = (float) i / ARC_LENGTH_SAMPLES;
+            float x = getX(t);
+            float y = getY(t);
+            length += (float) Math.sqrt((x - lastX) * (x - lastX) + (y - lastY) * (y - lastY));
+            arcLengths[i] = length;
+            lastX = x;
+            lastY = y;
+        }
+        for (int i = 1; i <= ARC_LENGTH_SAMPLES; i++) {
+            arcLengths[i] = length > 0 ? arcLengths[i] / length : (float) i / ARC_LENGTH_SAMPLES;
+        }
+    }
+
+    public boolean matches(float fromX, float fromY, float toX, float toY) {
+        return startValue.x == fromX && startValue.y == fromY && endValue.x == toX && endValue.y == toY;
+    }
+
+    public Point getStartValue() {
+        return startValue;
+    }
+
+    public Point getEndValue() {
+        return endValue;
+    }
+
+    public float getX(float t) {
+        return ((ax * t + bx) * t + cx) * t + dx;
+    }
+
+    public float getY(float t) {
+        return ((ay * t + by) * t + cy) * t + dy;
+    }
+
+    public void evaluate(float t, Point out) {
+        out.x = getX(t);
+        out.y = getY(t);
+    }
+
+    /**
+     * Maps a fraction of the total path length to the curve parameter, using a binary
+     * search over the baked table and a linear interpolation inside the matching sample.
+     */
+    public float getT(float distanceFraction) {
+        if (distanceFraction <= 0) {
+            return 0;
+        } else if (distanceFraction >= 1) {
+            return 1;
+        }
+
+        int low = 0, high = ARC_LENGTH_SAMPLES;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (arcLengths[middle] <= distanceFraction) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        float segment = arcLengths[high] - arcLengths[low];
+        float inSegment = segment > 0 ? (distanceFraction - arcLengths[low]) / segment : 0;
+        return (low + inSegment) / ARC_LENGTH_SAMPLES;
+    }
+
+    public void evaluateAtDistance(float distanceFraction, Point out) {
+        evaluate(getT(distanceFraction), out);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+/**
+ * Sizing and placement math for the FABs of a {@code FABRevealLayout}. It only deals with
+ * pixel values, so it can be used and measured outside of Android.
+ */
+public class FABGeometry {
+
+    private FABGeometry() {
+    }
+
+    /**
+     * Largest FAB size, capped at {@code maxSizePx}, that lets {@code fabCount} FABs and
+     * their padding fit in {@code availablePx}. Never negative, even when the padding alone
+     * doesn't fit, and 0 when there are no FABs.
+     */
+    public static int calculateFabOptimalSize(int availablePx, int fabCount, int paddingPx, int maxSizePx) {
+        if (fabCount <= 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(maxSizePx, (availablePx - fabCount * paddingPx) / fabCount));
+    }
+
+    /**
+     * Distance from the layout edge to the FAB at {@code index}, measured along the
+     * orientation of the FABs.
+     */
+    public static int calculateFabOffset(int index, int fabSizePx, int firstMarginPx, int spacingPx) {
+        return firstMarginPx + fabSizePx * index + spacingPx * index;
+    }
+}
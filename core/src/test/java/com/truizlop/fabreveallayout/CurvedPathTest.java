@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CurvedPathTest {
+
+    private static final int FRAMES = 60;
+    private static final float DELTA = 0.01f;
+
+    private CurvedPath path;
+    private Point point;
+
+    @Before
+    public void setUp() {
+        Object[] points = new CurvedAnimator(900, 40, 300, 500).getPoints();
+        path = new CurvedPath((Point) points[0], (Point) points[1]);
+        point = new Point(0, 0);
+    }
+
+    @Test
+    public void startsAndEndsAtTheEndpoints() {
+        path.evaluateAtDistance(0, point);
+        assertEquals(900, point.getX(), DELTA);
+        assertEquals(40, point.getY(), DELTA);
+
+        path.evaluateAtDistance(1, point);
+        assertEquals(300, point.getX(), DELTA);
+        assertEquals(500, point.getY(), DELTA);
+    }
+
+    @Test
+    public void advancesAtConstantSpeed() {
+        float previousX = 900, previousY = 40;
+        float firstStep = -1;
+        for (int frame = 1; frame <= FRAMES; frame++) {
+            path.evaluateAtDistance((float) frame / FRAMES, point);
+            float step = (float) Math.hypot(point.getX() - previousX, point.getY() - previousY);
+            if (firstStep < 0) {
+                firstStep = step;
+            }
+            assertEquals(firstStep, step, firstStep * 0.1f);
+            previousX = point.getX();
+            previousY = point.getY();
+        }
+    }
+
+    @Test
+    public void staysBetweenTheStartAndTargetHeights() {
+        for (int frame = 0; frame <= FRAMES; frame++) {
+            path.evaluateAtDistance((float) frame / FRAMES, point);
+            assertTrue("y = " + point.getY() + " at frame " + frame,
+                    point.getY() >= 40 - DELTA && point.getY() <= 500 + DELTA);
+        }
+    }
+
+    @Test
+    public void rebakingMatchesANewPath() {
+        Object[] points = new CurvedAnimator(100, 20, 400, 300).getPoints();
+        path.set((Point) points[0], (Point) points[1]);
+        CurvedPath expected = new CurvedPath((Point) points[0], (Point) points[1]);
+        Point expectedPoint = new Point(0, 0);
+
+        for (int frame = 0; frame <= FRAMES; frame++) {
+            path.evaluateAtDistance((float) frame / FRAMES, point);
+            expected.evaluateAtDistance((float) frame / FRAMES, expectedPoint);
+            assertEquals(expectedPoint.getX(), point.getX(), DELTA);
+            assertEquals(expectedPoint.getY(), point.getY(), DELTA);
+        }
+        assertTrue(path.matches(100, 20, 400, 300));
+    }
+
+    /**
+     * A whole travel, one evaluation per frame, must not allocate, or every reveal feeds the
+     * garbage collector while it animates.
+     */
+    @Test
+    public void evaluatingFramesDoesNotAllocate() {
+        AllocationMeter meter = new AllocationMeter();
+        for (int i = 0; i < 10000; i++) {
+            path.evaluateAtDistance((i % FRAMES) / (float) FRAMES, point);
+        }
+
+        long allocated = meter.measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int frame = 0; frame <= FRAMES; frame++) {
+                    path.evaluateAtDistance((float) frame / FRAMES, point);
+                }
+            }
+        });
+
+        assertEquals("Allocated " + allocated + " bytes in " + FRAMES + " frames", 0, allocated);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FABGeometryTest {
+
+    @Test
+    public void sizeIsCappedAtTheMaximum() {
+        assertEquals(48, FABGeometry.calculateFabOptimalSize(1000, 4, 16, 48));
+    }
+
+    @Test
+    public void sizeShrinksToFitTheAvailableSpace() {
+        assertEquals(34, FABGeometry.calculateFabOptimalSize(200, 4, 16, 48));
+    }
+
+    @Test
+    public void sizeIsNeverNegative() {
+        assertEquals(0, FABGeometry.calculateFabOptimalSize(0, 4, 16, 48));
+        assertEquals(0, FABGeometry.calculateFabOptimalSize(40, 4, 16, 48));
+        assertEquals(0, FABGeometry.calculateFabOptimalSize(1000, 0, 16, 48));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counts the bytes the current thread allocates while it runs a block of frames. A test that
+ * creates one is skipped on virtual machines that can't count allocations per thread.
+ */
+final class AllocationMeter {
+
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final long threadId;
+    private final long overhead;
+
+    AllocationMeter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        threadId = Thread.currentThread().getId();
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        overhead = threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    /**
+     * Returns the bytes allocated by {@code frames}, less what reading the counter costs.
+     */
+    long measure(Runnable frames) {
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        frames.run();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        return Math.max(0, allocated - overhead);
+    }
+}
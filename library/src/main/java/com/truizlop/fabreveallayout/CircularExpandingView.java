@@ -16,12 +16,16 @@
 package com.truizlop.fabreveallayout;
 
 import android.animation.Animator;
+import android.annotation.TargetApi;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.os.Build;
+import android.support.v4.os.TraceCompat;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewAnimationUtils;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.Interpolator;
 
@@ -29,9 +33,12 @@ public class CircularExpandingView extends View {
 
     protected static final int ANIMATION_DURATION = 300;
 
-    protected final Interpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
+    protected static final Interpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
     protected Paint paint = null;
     protected float expandFraction = 0;
+    protected int centerX = 0, centerY = 0;
+    protected float maxRadius = 0;
+    protected long animationDuration = ANIMATION_DURATION;
 
     public CircularExpandingView(Context context) {
         super(context);
@@ -52,19 +59,45 @@ public class CircularExpandingView extends View {
         paint = new Paint();
     }
 
+    public void setAnimationDuration(long animationDuration) {
+        this.animationDuration = animationDuration;
+    }
+
+    public long getAnimationDuration() {
+        return animationDuration;
+    }
+
+    /**
+     * The overlay is a single rect or circle, so it can fade without an offscreen layer.
+     */
+    @Override
+    public boolean hasOverlappingRendering() {
+        return false;
+    }
+
     public void setColor(int color){
         paint.setColor(color);
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        centerX = w/2;
+        centerY = h/2;
+        maxRadius = (float) Math.sqrt(centerX*centerX + centerY*centerY);
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
+        TraceCompat.beginSection("CircularExpandingView#onDraw");
         super.onDraw(canvas);
 
-        int cx = canvas.getWidth()/2;
-        int cy = canvas.getHeight()/2;
-        float radius = (float) Math.sqrt(cx*cx + cy*cy) * expandFraction;
-
-        canvas.drawCircle(cx, cy, radius, paint);
+        if (expandFraction >= 1) {
+            canvas.drawRect(0, 0, getWidth(), getHeight(), paint);
+        } else if (expandFraction > 0) {
+            canvas.drawCircle(centerX, centerY, maxRadius * expandFraction, paint);
+        }
+        TraceCompat.endSection();
     }
 
     public Animator expand(){
@@ -75,9 +108,23 @@ public class CircularExpandingView extends View {
         return animateExpandFraction(1, 0.1f);
     }
 
+    /**
+     * Expands a circle centered at ({@code cx}, {@code cy}) by clipping {@code target} with
+     * the platform circular reveal. It runs on the RenderThread, so it keeps going while the
+     * UI thread is busy, but it cannot be restarted once finished.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public Animator expandNatively(View target, int cx, int cy){
+        float radius = (float) Math.sqrt(cx*cx + cy*cy);
+        Animator animator = ViewAnimationUtils.createCircularReveal(target, cx, cy, radius * 0.1f, radius);
+        animator.setDuration(animationDuration);
+        animator.setInterpolator(INTERPOLATOR);
+        return animator;
+    }
+
     public Animator animateExpandFraction(float from, float to){
         ValueAnimator animator = ValueAnimator.ofFloat(from, to);
-        animator.setDuration(ANIMATION_DURATION);
+        animator.setDuration(animationDuration);
         animator.setInterpolator(INTERPOLATOR);
 
         animator.addUpdateListener(updateListener);
@@ -91,9 +138,21 @@ public class CircularExpandingView extends View {
         }
     };
 
+    /**
+     * Only the bounding box of the larger of the old and new circles is invalidated, since
+     * nothing outside of it changes between two frames.
+     */
     public void setExpandFraction(float expandFraction) {
+        if (this.expandFraction == expandFraction) {
+            return;
+        }
+        float radius = maxRadius * Math.max(this.expandFraction, expandFraction);
         this.expandFraction = expandFraction;
-        invalidate();
+        int left = Math.max(0, (int) (centerX - radius));
+        int top = Math.max(0, (int) (centerY - radius));
+        int right = Math.min(getWidth(), (int) Math.ceil(centerX + radius));
+        int bottom = Math.min(getHeight(), (int) Math.ceil(centerY + radius));
+        invalidate(left, top, right, bottom);
     }
 
 }
@@ -19,23 +19,52 @@ import android.animation.TypeEvaluator;
 
 /**
  * Created by tomas on 11/08/15.
+ *
+ * The returned {@link Point} is owned by the evaluator and rewritten on every call, so the
+ * per-frame path never allocates. Copy it if you need to keep a value around.
+ *
+ * The fraction is interpreted as a fraction of the path length. An evaluator built from an
+ * already baked {@link CurvedPath} ignores the values given by the animator, and can walk
+ * the path backwards so that the same table serves both directions.
+ *
+ * @deprecated {@link FABRevealLayout} no longer animates through a {@code TypeEvaluator}.
+ * Sample a {@link CurvedPath} directly with {@link CurvedPath#evaluateAtDistance(float, Point)}.
  */
+@Deprecated
 public class CurvedPathEvaluator implements TypeEvaluator<Point> {
 
+    protected final Point point = new Point(0, 0);
+    protected CurvedPath path = null;
+    protected Point pathStart = null, pathEnd = null;
+    protected boolean baked = false;
+    protected boolean reverse = false;
+
+    public CurvedPathEvaluator() {
+    }
+
+    public CurvedPathEvaluator(CurvedPath path, boolean reverse) {
+        this.path = path;
+        this.reverse = reverse;
+        this.baked = true;
+    }
+
     @Override
     public Point evaluate(float t, Point startValue, Point endValue) {
-        float x, y;
-
-        float oneMinusT = 1 - t;
-        x = oneMinusT * oneMinusT * oneMinusT * startValue.x +
-                3 * oneMinusT * oneMinusT * t * endValue.control0X +
-                3 * oneMinusT * t * t * endValue.control1X +
-                t * t * t * endValue.x;
-        y = oneMinusT * oneMinusT * oneMinusT * startValue.y +
-                3 * oneMinusT * oneMinusT * t * endValue.y +
-                3 * oneMinusT * t * t * endValue.y +
-                t * t * t * endValue.y;
+        getPath(startValue, endValue).evaluateAtDistance(reverse ? 1 - t : t, point);
+        return point;
+    }
 
-        return new Point(x,y);
+    protected CurvedPath getPath(Point startValue, Point endValue) {
+        if (baked) {
+            return path;
+        }
+        if (path == null) {
+            path = new CurvedPath(startValue, endValue);
+        } else if (startValue != pathStart || endValue != pathEnd) {
+            path.set(startValue, endValue);
+        }
+        pathStart = startValue;
+        pathEnd = endValue;
+        return path;
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.support.design.widget.FloatingActionButton;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Supplies the FABs and their main and secondary views to a {@link FABRevealLayout} on demand.
+ * Only the FABs that fit in the layout are bound at a time, and views are handed back as
+ * {@code convertView} when the visible positions change, like in a {@code ListView}.
+ */
+public abstract class FABRevealAdapter {
+
+    private final DataSetObservable dataSetObservable = new DataSetObservable();
+
+    public abstract int getCount();
+
+    public FloatingActionButton createFAB(ViewGroup parent) {
+        return new FloatingActionButton(parent.getContext());
+    }
+
+    public abstract void onBindFAB(FloatingActionButton fab, int position);
+
+    public abstract View getMainView(int position, View convertView, ViewGroup parent);
+
+    /**
+     * Only called the first time the secondary view at {@code position} is revealed.
+     */
+    public abstract View getSecondaryView(int position, View convertView, ViewGroup parent);
+
+    public void registerDataSetObserver(DataSetObserver observer) {
+        dataSetObservable.registerObserver(observer);
+    }
+
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        dataSetObservable.unregisterObserver(observer);
+    }
+
+    public void notifyDataSetChanged() {
+        dataSetObservable.notifyChanged();
+    }
+}
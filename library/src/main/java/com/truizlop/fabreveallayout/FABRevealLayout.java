@@ -18,122 +18,365 @@ package com.truizlop.fabreveallayout;
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.DataSetObserver;
 import android.os.Build;
-import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.provider.Settings;
 import android.support.design.widget.FloatingActionButton;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.view.animation.FastOutSlowInInterpolator;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.util.Property;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
+import android.view.Display;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewTreeObserver;
+import android.view.ViewStub;
+import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
-import android.widget.RelativeLayout;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-public class FABRevealLayout extends RelativeLayout {
+public class FABRevealLayout extends ViewGroup {
 
     private int fabSizePx;
-    private float fabMaxSize = 48;
-    private int fabOrientation = 0; /* 0 = vertical, 1 = horizontal */
+    private int fabSizeAvailablePx = -1, fabSizeFabCount = -1;
+    private int fabPaddingPx, fabFirstMarginPx, fabSpacingPx, fabMaxSizePx;
+    private ViewGroup.LayoutParams offsetLayoutParams = null;
+    private static final float DEFAULT_FAB_MAX_SIZE_DP = 24;
+    private int fabOrientation = FAB_ORIENTATION_VERTICAL;
     private static final int ANIMATION_DURATION = 500;
-    private final Interpolator INTERPOLATOR = new FastOutSlowInInterpolator();
+    static final int DEFAULT_ADAPTER_CAPACITY = 4;
 
-    private List<View> childViews = null;
+    public static final int FAB_ORIENTATION_VERTICAL = 0;
+    public static final int FAB_ORIENTATION_HORIZONTAL = 1;
+
+    public static final int REVEAL_POLICY_QUEUE = 0;
+    public static final int REVEAL_POLICY_PARALLEL = 1;
+
+    public static final int PERFORMANCE_PROFILE_AUTO = 0;
+    public static final int PERFORMANCE_PROFILE_FULL = 1;
+    public static final int PERFORMANCE_PROFILE_REDUCED = 2;
+    public static final int PERFORMANCE_PROFILE_MINIMAL = 3;
+
+    private static final int STATE_MAIN = 0;
+    private static final int STATE_REVEALING = 1;
+    private static final int STATE_SECONDARY = 2;
+    private static final int STATE_HIDING = 3;
+
+    /**
+     * Position of a FAB along its path, set without the reflective lookup and invocation
+     * that a property name would need on every frame.
+     */
+    public static final Property<View, Point> FAB_POSITION = new Property<View, Point>(Point.class, "fabPosition") {
+        @Override
+        public Point get(View view) {
+            return new Point(view.getX(), view.getY());
+        }
+
+        @Override
+        public void set(View view, Point point) {
+            view.setX(point.x);
+            view.setY(point.y);
+        }
+    };
+    private static final Interpolator INTERPOLATOR = new FastOutSlowInInterpolator();
+
+    private List<View> childViews = new ArrayList<>();
     private List<FloatingActionButton> fabs = new ArrayList<>();
+    private SparseArray<CurvedPath> fabPaths = new SparseArray<>();
+    private ValueAnimator unusedFABsAnimator = null;
+    private boolean warmupEnabled = false, warmupScheduled = false;
+    private int warmedUpIndices = 0;
+    private float[] unusedFABAlphas = null;
+    private SparseArray<RevealAnimators> revealAnimators = new SparseArray<>();
 
     private int fabIndex = 0, indexAnimated = -1;
+    private int revealPolicy = REVEAL_POLICY_QUEUE;
+    private int performanceProfile = PERFORMANCE_PROFILE_AUTO;
+    private long travelDuration = ANIMATION_DURATION;
+    private long expandDuration = CircularExpandingView.ANIMATION_DURATION;
+    private SparseIntArray revealStates = new SparseIntArray();
+    private ArrayDeque<Integer> pendingTransitions = new ArrayDeque<>();
+    private boolean nativeRevealEnabled = true;
+    private boolean hardwareLayersEnabled = true;
+    private HardwareLayerPolicy hardwareLayerPolicy = null;
+    private SecondaryViewFactory secondaryViewFactory = null;
+    private int pendingSecondaryIndex = -1;
+    private SparseIntArray secondaryLayoutResources = new SparseIntArray();
+    private LinkedHashMap<Integer, View> inflatedSecondaryViews = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxInflatedSecondaryViews = Integer.MAX_VALUE;
+    private int secondaryViewCacheHits = 0, secondaryViewCacheMisses = 0;
+
+    private FABRevealAdapter adapter = null;
+    private int firstVisiblePosition = 0, adapterCapacity = 0;
+    private boolean adapterPopulatePending = false;
+    private boolean adapterObserverRegistered = false;
+    private boolean blockLayoutRequests = false;
+    private int[] restoredIndices = null;
+    private List<View> mainScrap = new ArrayList<>();
+    private List<View> secondaryScrap = new ArrayList<>();
     private CircularExpandingView circularExpandingView = null;
     private OnRevealChangeListener onRevealChangeListener = null;
+    private OnRevealIntentListener onRevealIntentListener = null;
+    private boolean progressDispatchPending = false;
+    private OnRevealMetricsListener onRevealMetricsListener = null;
+    private RevealLogger logger = null;
 
     public FABRevealLayout(Context context) {
         this(context, null);
-        childViews = new ArrayList<>();
-        fabIndex = 0;
-        fabs = new ArrayList<>();
-        setGlobalListener();
     }
 
     public FABRevealLayout(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
-        TypedArray a = context.getTheme().obtainStyledAttributes(
-                attrs,
-                R.styleable.FABRevealLayout,
-                0, 0);
-
-        try {
-            fabMaxSize = a.getDimension(R.styleable.FABRevealLayout_fabMaxSize, 24);
-            fabOrientation = a.getInt(R.styleable.FABRevealLayout_faborientation, 0);
-        } finally {
-            a.recycle();
-        }
-        setGlobalListener();
-        childViews = new ArrayList<>();
-        fabIndex = 0;
-        fabs = new ArrayList<>();
     }
 
     public FABRevealLayout(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
-        TypedArray a = context.getTheme().obtainStyledAttributes(
-                attrs,
-                R.styleable.FABRevealLayout,
-                0, 0);
+        initialize(context, attrs, defStyleAttr, 0);
+    }
 
-        try {
-            fabMaxSize = a.getDimension(R.styleable.FABRevealLayout_fabMaxSize, 24);
-            fabOrientation = a.getInteger(R.styleable.FABRevealLayout_faborientation, 0);
-        } finally {
-            a.recycle();
-        }
-        setGlobalListener();
-        childViews = new ArrayList<>();
-        fabIndex = 0;
-        fabs = new ArrayList<>();
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public FABRevealLayout(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+        initialize(context, attrs, defStyleAttr, defStyleRes);
     }
 
-    private void setGlobalListener() {
-        final RelativeLayout me = this;
-        final ViewTreeObserver vto = this.getViewTreeObserver();
-        vto.addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-            @Override
-            public void onGlobalLayout() {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                    me.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                }
-                setupInitialState();
+    /**
+     * Reads the attributes once, whichever constructor was used. Layouts created in code
+     * with no attributes or style skip the lookup altogether.
+     */
+    private void initialize(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        fabMaxSizePx = dipsToPixels(DEFAULT_FAB_MAX_SIZE_DP);
+        if (attrs != null || defStyleAttr != 0 || defStyleRes != 0) {
+            TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.FABRevealLayout, defStyleAttr, defStyleRes);
+            try {
+                fabMaxSizePx = a.getDimensionPixelSize(R.styleable.FABRevealLayout_fabMaxSize, fabMaxSizePx);
+                fabOrientation = a.getInt(R.styleable.FABRevealLayout_faborientation, fabOrientation);
+            } finally {
+                a.recycle();
             }
-        });
+        }
+        calculateLayoutMetrics();
+    }
+
+    private void calculateLayoutMetrics() {
+        fabPaddingPx = dipsToPixels(16);
+        fabFirstMarginPx = dipsToPixels(20);
+        fabSpacingPx = dipsToPixels(8);
+    }
+
+    /**
+     * Caps the size of the FABs, in pixels; the {@code fabMaxSize} attribute takes a dimension.
+     * 24dp by default. The layout is moved up by this size, see
+     * {@link #setLayoutParams(ViewGroup.LayoutParams)}, so that offset follows the new size.
+     */
+    public void setFabMaxSizePx(int fabMaxSizePx) {
+        if (offsetLayoutParams != null) {
+            ((MarginLayoutParams) offsetLayoutParams).topMargin += this.fabMaxSizePx - fabMaxSizePx;
+        }
+        this.fabMaxSizePx = fabMaxSizePx;
+        fabSizeAvailablePx = -1;
+        requestLayout();
+    }
+
+    public int getFabMaxSizePx() {
+        return fabMaxSizePx;
+    }
+
+    /**
+     * Lines the FABs up along {@link #FAB_ORIENTATION_VERTICAL}, the default, or
+     * {@link #FAB_ORIENTATION_HORIZONTAL}.
+     */
+    public void setFabOrientation(int fabOrientation) {
+        this.fabOrientation = fabOrientation;
+        fabSizeAvailablePx = -1;
+        requestLayout();
+    }
+
+    public int getFabOrientation() {
+        return fabOrientation;
     }
 
-    private void calculateFabOptimalSize() {
-        if (fabOrientation == 0) {
-            int heightPx = getMeasuredHeight();
-            int padding = dipsToPixels(16f);
-            fabSizePx = Math.min(dipsToPixels(fabMaxSize), (heightPx - fabs.size() * padding) / fabs.size());
-            Log.e("BEST", "Total height: " + heightPx +
-                    ", max height: " + dipsToPixels(fabMaxSize) +
-                    ", optimal : " + (heightPx - fabs.size() * padding) / fabs.size() +
+    /**
+     * The FAB size only depends on the available space and the number of FABs, so it is
+     * recomputed only when one of them changes.
+     */
+    private void calculateFabOptimalSize(int availablePx) {
+        if (availablePx == fabSizeAvailablePx && fabs.size() == fabSizeFabCount) {
+            return;
+        }
+        fabSizeAvailablePx = availablePx;
+        fabSizeFabCount = fabs.size();
+        fabSizePx = fabs.isEmpty() ? 0 :
+                FABGeometry.calculateFabOptimalSize(availablePx, fabs.size(), fabPaddingPx, fabMaxSizePx);
+        if (logger != null) {
+            logger.log(this, "Total " + (fabOrientation == FAB_ORIENTATION_VERTICAL ? "height" : "width") + ": " + availablePx +
+                    ", max size: " + fabMaxSizePx +
                     ", chosen : " + fabSizePx + " px");
+        }
+    }
+
+    /**
+     * Sizes the FABs from the space available along their orientation, then measures every
+     * child exactly once. Main, secondary and overlay views share the area below the FABs.
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        TraceCompat.beginSection("FABRevealLayout#onMeasure");
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int verticalPadding = getPaddingTop() + getPaddingBottom();
+        int measureSpec = fabOrientation == FAB_ORIENTATION_VERTICAL ? heightMeasureSpec : widthMeasureSpec;
+        int availablePx = MeasureSpec.getMode(measureSpec) == MeasureSpec.UNSPECIFIED ?
+                Integer.MAX_VALUE / 2 :
+                MeasureSpec.getSize(measureSpec) - (fabOrientation == FAB_ORIENTATION_VERTICAL ? verticalPadding : horizontalPadding);
+        int capacity = MeasureSpec.getMode(measureSpec) != MeasureSpec.UNSPECIFIED ?
+                getAdapterCapacity(availablePx) :
+                adapterCapacity > 0 ? adapterCapacity : DEFAULT_ADAPTER_CAPACITY;
+        if (capacity != adapterCapacity) {
+            adapterCapacity = capacity;
+            if (adapter != null) {
+                /* Bound here, so the new slots are measured and laid out in this same pass */
+                blockLayoutRequests = true;
+                populateFromAdapter();
+                blockLayoutRequests = false;
+            }
+        }
+        calculateFabOptimalSize(availablePx);
+        if (circularExpandingView == null) {
+            addCircularRevealView();
+        }
+
+        int contentWidth = 0, contentHeight = 0;
+        for (int i = 0, count = getChildCount() - fabs.size(); i < count; i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() != GONE) {
+                measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec, fabSizePx);
+                MarginLayoutParams params = (MarginLayoutParams) child.getLayoutParams();
+                contentWidth = Math.max(contentWidth,
+                        child.getMeasuredWidth() + params.leftMargin + params.rightMargin);
+                contentHeight = Math.max(contentHeight,
+                        fabSizePx + child.getMeasuredHeight() + params.topMargin + params.bottomMargin);
+            }
+        }
+
+        int fabMeasureSpec = MeasureSpec.makeMeasureSpec(fabSizePx, MeasureSpec.EXACTLY);
+        for (int i = 0; i < fabs.size(); i++) {
+            fabs.get(i).measure(fabMeasureSpec, fabMeasureSpec);
+        }
+        int lastFab = fabs.size() - 1;
+        int fabsWidth = fabs.isEmpty() ? 0 : getFabRightMargin(lastFab) + fabSizePx;
+        int fabsHeight = fabs.isEmpty() ? 0 : getFabTopMargin(lastFab) + fabSizePx;
+
+        int width = Math.max(Math.max(contentWidth, fabsWidth) + horizontalPadding, getSuggestedMinimumWidth());
+        int height = Math.max(Math.max(contentHeight, fabsHeight) + verticalPadding, getSuggestedMinimumHeight());
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+        TraceCompat.endSection();
+    }
+
+    /**
+     * Children bound from the adapter during the measure pass are measured in that same pass,
+     * so the requests they make are dropped, as {@link android.widget.AbsListView} does.
+     */
+    @Override
+    public void requestLayout() {
+        if (!blockLayoutRequests) {
+            super.requestLayout();
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        TraceCompat.beginSection("FABRevealLayout#onLayout");
+        for (int i = 0, count = getChildCount() - fabs.size(); i < count; i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() != GONE) {
+                MarginLayoutParams params = (MarginLayoutParams) child.getLayoutParams();
+                int left = getPaddingLeft() + params.leftMargin;
+                int top = getPaddingTop() + fabSizePx + params.topMargin;
+                child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+            }
+        }
+
+        int right = r - l - getPaddingRight();
+        for (int i = 0; i < fabs.size(); i++) {
+            View fab = fabs.get(i);
+            int left = right - getFabRightMargin(i) - fab.getMeasuredWidth();
+            int top = getPaddingTop() + getFabTopMargin(i);
+            fab.layout(left, top, left + fab.getMeasuredWidth(), top + fab.getMeasuredHeight());
+        }
+        scheduleWarmup();
+        TraceCompat.endSection();
+    }
+
+    private int getFabRightMargin(int index) {
+        if (fabOrientation == FAB_ORIENTATION_VERTICAL) {
+            /* Vertical */
+            return fabPaddingPx;
         } else {
-            int widthPx = getMeasuredWidth();
-            int padding = dipsToPixels(16f);
-            fabSizePx = Math.min(dipsToPixels(fabMaxSize), (widthPx - fabs.size() * padding) / fabs.size());
-            Log.e("BEST", "Total height: " + widthPx +
-                    ", max height: " + dipsToPixels(fabMaxSize) +
-                    ", optimal : " + (widthPx - fabs.size() * padding) / fabs.size() +
-                    ", chosen : " + fabSizePx + " px");
+            /* Horizontal */
+            return FABGeometry.calculateFabOffset(index, fabSizePx, fabFirstMarginPx, fabSpacingPx);
+        }
+    }
+
+    private int getFabTopMargin(int index) {
+        if (fabOrientation == FAB_ORIENTATION_VERTICAL) {
+            /* Vertical */
+            return FABGeometry.calculateFabOffset(index, fabSizePx, fabFirstMarginPx, fabSpacingPx);
+        } else {
+            /* Horizontal */
+            return 0;
         }
     }
 
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams params) {
+        return params instanceof MarginLayoutParams;
+    }
+
+    @Override
+    public ViewGroup.LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new MarginLayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected ViewGroup.LayoutParams generateLayoutParams(ViewGroup.LayoutParams params) {
+        return new MarginLayoutParams(params);
+    }
+
+    @Override
+    protected ViewGroup.LayoutParams generateDefaultLayoutParams() {
+        return new MarginLayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    /**
+     * FABs are kept after every other child, so they are drawn on top without having to be
+     * brought to front after each layout. They are always appended, whatever index is given.
+     */
     @Override
     public void addView(View child, int index, ViewGroup.LayoutParams params) {
+        if (child instanceof FloatingActionButton) {
+            index = -1;
+        } else {
+            int lastContentIndex = getChildCount() - fabs.size();
+            index = index < 0 ? lastContentIndex : Math.min(index, lastContentIndex);
+        }
         setupView(child);
         super.addView(child, index, params);
     }
@@ -149,288 +392,1644 @@ public class FABRevealLayout extends RelativeLayout {
     private void setupFAB(View view) {
         view.setTag(fabIndex);
         fabIndex++;
-        view.setOnClickListener(new OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                if (indexAnimated == -1) {
-                    indexAnimated = (int) v.getTag();
-                    revealSecondaryView((int) v.getTag());
-                    startHideAnimationUnusedFAB(indexAnimated);
-                }
-            }
-        });
+        view.setOnClickListener(FAB_CLICK_LISTENER);
         fabs.add((FloatingActionButton) view);
     }
 
+    /**
+     * Shared by every FAB of every layout; the FAB's parent and tag say what to reveal.
+     */
+    private static final OnClickListener FAB_CLICK_LISTENER = new OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            if (v.getParent() instanceof FABRevealLayout) {
+                ((FABRevealLayout) v.getParent()).revealSecondaryView((int) v.getTag());
+            }
+        }
+    };
+
     private void setupChildView(View view) {
+        if (pendingSecondaryIndex != -1) {
+            /* Lazily created secondary view replacing its stub */
+            childViews.set(2 * pendingSecondaryIndex + 1, view);
+            view.setVisibility(GONE);
+            return;
+        }
         childViews.add(view);
+        if (childViews.size() % 2 == 0) {
+            /* Secondary views start hidden */
+            view.setVisibility(GONE);
+        }
     }
 
+    /**
+     * Added from the first measure pass, so that it doesn't trigger another layout.
+     */
     private void addCircularRevealView() {
         circularExpandingView = new CircularExpandingView(getContext());
-        LayoutParams params = new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
-        params.topMargin = fabSizePx;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            circularExpandingView.setZ(-1);
-        }
+        MarginLayoutParams params = new MarginLayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
         circularExpandingView.setVisibility(View.GONE);
-        addView(circularExpandingView, params);
+        warmedUpIndices = 0;
+        // First child, so it is drawn below the fading main and secondary views on every API level
+        addViewInLayout(circularExpandingView, 0, params, true);
+        revealAnimators.clear();
     }
 
-    private void setupInitialState() {
-        calculateFabOptimalSize();
-        setupFABPosition();
-        setupChildViewsPosition();
-        addCircularRevealView();
+    private boolean isShowingMainView(int index) {
+        return getMainView(index).getVisibility() == VISIBLE;
     }
 
-    private void setupFABPosition() {
-        for (int i = 0; i < fabs.size(); i++) {
-            FloatingActionButton fab = fabs.get(i);
-            RelativeLayout.LayoutParams params = (RelativeLayout.LayoutParams) fab.getLayoutParams();
-            params.addRule(RelativeLayout.ALIGN_PARENT_TOP, RelativeLayout.TRUE);
-            params.addRule(RelativeLayout.ALIGN_PARENT_RIGHT, RelativeLayout.TRUE);
-            params.height = fabSizePx;
-            params.width = fabSizePx;
-
-            if (fabOrientation == 0) {
-                    /* Vertical */
-                params.rightMargin = dipsToPixels(16);
-                params.topMargin = dipsToPixels(20) + fabSizePx*i + dipsToPixels(8) * i;
-            } else {
-                    /* Horizontal */
-                params.rightMargin = dipsToPixels(20) + fabSizePx*i + dipsToPixels(8) * i;
-//                params.topMargin = fabSizePx / 2;
+    public void revealMainView(int index) {
+        requestTransition(index, false, true);
+    }
+
+    public void revealSecondaryView(int index) {
+        requestTransition(index, true, true);
+    }
+
+    /**
+     * Decides what happens when a reveal is requested while other transitions are running.
+     * With {@link #REVEAL_POLICY_QUEUE}, the default, one transition runs at a time and the
+     * others wait for it in order. With {@link #REVEAL_POLICY_PARALLEL}, transitions of
+     * different indices run at the same time and share the overlay. In both cases a request
+     * for an index that is itself transitioning reverses that transition where it stands.
+     */
+    public void setRevealPolicy(int revealPolicy) {
+        this.revealPolicy = revealPolicy;
+    }
+
+    public int getRevealPolicy() {
+        return revealPolicy;
+    }
+
+    private int getRevealState(int index) {
+        return revealStates.get(index, STATE_MAIN);
+    }
+
+    private void setRevealState(int index, int state) {
+        revealStates.put(index, state);
+    }
+
+    private boolean hasRunningTransition() {
+        for (int i = 0; i < revealStates.size(); i++) {
+            int state = revealStates.valueAt(i);
+            if (state == STATE_REVEALING || state == STATE_HIDING) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            fab.bringToFront();
+    private boolean isShowingOnlyMainViews(int exceptIndex) {
+        for (int i = 0; i < revealStates.size(); i++) {
+            if (revealStates.keyAt(i) != exceptIndex && revealStates.valueAt(i) != STATE_MAIN) {
+                return false;
+            }
         }
+        return true;
+    }
 
+    /**
+     * Applies a request when it changes where the index is heading. With {@code notify}, the
+     * intent listener hears about it before anything changes on screen, which matters when
+     * the performance profile swaps the views at once.
+     */
+    private void requestTransition(int index, boolean reveal, boolean notify) {
+        int state = getRevealState(index);
+        if (state == STATE_REVEALING || state == STATE_HIDING) {
+            if ((state == STATE_REVEALING) != reveal) {
+                notifyRequested(index, reveal, notify);
+                setRevealState(index, reveal ? STATE_REVEALING : STATE_HIDING);
+                getRevealAnimators(index).reverse();
+            }
+        } else if ((state == STATE_SECONDARY) != reveal) {
+            if (revealPolicy == REVEAL_POLICY_QUEUE && hasRunningTransition()) {
+                if (enqueueTransition(index, reveal)) {
+                    notifyRequested(index, reveal, notify);
+                }
+            } else if (reveal) {
+                notifyRequested(index, true, notify);
+                startRevealAnimation(index);
+            } else {
+                notifyRequested(index, false, notify);
+                startHideAnimation(index);
+            }
+        } else if (pendingTransitions.remove(2 * index + (reveal ? 0 : 1))) {
+            /* Settled where it was asked to go, so a waiting opposite request is dropped */
+            notifyRequested(index, reveal, notify);
+        }
     }
 
-    private void setupChildViewsPosition() {
-        for (int i = 0; i < childViews.size(); i++) {
-            RelativeLayout.LayoutParams params = (RelativeLayout.LayoutParams) childViews.get(i).getLayoutParams();
-            params.topMargin = fabSizePx;
+    private void notifyRequested(int index, boolean reveal, boolean notify) {
+        if (notify && onRevealIntentListener != null) {
+            if (reveal) {
+                onRevealIntentListener.onRevealRequested(this, index);
+            } else {
+                onRevealIntentListener.onHideRequested(this, index);
+            }
         }
-        for (int i = 0; i < fabs.size(); i++) {
-            getSecondaryView(i).setVisibility(GONE);
+    }
+
+    /**
+     * Queues a request, dropping it when it is already queued and cancelling it out when the
+     * opposite request for the same index is still waiting.
+     */
+    private boolean enqueueTransition(int index, boolean reveal) {
+        Integer request = 2 * index + (reveal ? 1 : 0);
+        Integer opposite = 2 * index + (reveal ? 0 : 1);
+        if (pendingTransitions.remove(opposite)) {
+            return true;
+        } else if (!pendingTransitions.contains(request)) {
+            pendingTransitions.add(request);
+            return true;
         }
+        return false;
     }
 
-    private boolean isShowingMainView(int index) {
-        return getMainView(index).getVisibility() == VISIBLE;
+    private void processPendingTransitions() {
+        for (int i = 0, size = pendingTransitions.size(); i < size && !pendingTransitions.isEmpty(); i++) {
+            int request = pendingTransitions.poll();
+            requestTransition(request / 2, request % 2 == 1, false);
+        }
     }
 
-    public void revealMainView(int index) {
-        if (!isShowingMainView(index)) {
-            startHideAnimation(index);
+    private void onTransitionSettled() {
+        if (adapterPopulatePending && isShowingOnlyMainViews(-1)) {
+            populateFromAdapter();
         }
+        processPendingTransitions();
     }
 
-    public void revealSecondaryView(int index) {
-        if (isShowingMainView(index)) {
-            startRevealAnimation(index);
+    /**
+     * Uses the platform circular reveal for the overlay expansion on Lollipop and above.
+     * Enabled by default; older versions always draw the overlay on the UI thread.
+     */
+    public void setNativeRevealEnabled(boolean nativeRevealEnabled) {
+        this.nativeRevealEnabled = nativeRevealEnabled;
+    }
+
+    public boolean isNativeRevealEnabled() {
+        return nativeRevealEnabled;
+    }
+
+    private boolean isNativeRevealActive() {
+        return nativeRevealEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    /**
+     * Renders the main and secondary views into a hardware layer while they fade, so each
+     * frame only composites the layer instead of redrawing the whole view tree offscreen.
+     * Enabled by default.
+     */
+    public void setHardwareLayersEnabled(boolean hardwareLayersEnabled) {
+        this.hardwareLayersEnabled = hardwareLayersEnabled;
+    }
+
+    public boolean isHardwareLayersEnabled() {
+        return hardwareLayersEnabled;
+    }
+
+    /**
+     * Decides which fading views get a hardware layer. By default every view does, except the
+     * ones reporting no overlapping rendering, which already fade without an offscreen pass.
+     */
+    public void setHardwareLayerPolicy(HardwareLayerPolicy hardwareLayerPolicy) {
+        this.hardwareLayerPolicy = hardwareLayerPolicy;
+    }
+
+    private boolean shouldUseHardwareLayer(View view) {
+        if (!hardwareLayersEnabled || view.getLayerType() != LAYER_TYPE_NONE) {
+            return false;
+        } else if (hardwareLayerPolicy != null) {
+            return hardwareLayerPolicy.shouldUseHardwareLayer(this, view);
+        } else {
+            return Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || view.hasOverlappingRendering();
         }
     }
 
+    /**
+     * Also accepts an {@link OnRevealIntentListener}, which additionally hears about requests
+     * and the progress of every transition.
+     */
     public void setOnRevealChangeListener(OnRevealChangeListener onRevealChangeListener) {
         this.onRevealChangeListener = onRevealChangeListener;
+        onRevealIntentListener = onRevealChangeListener instanceof OnRevealIntentListener ?
+                (OnRevealIntentListener) onRevealChangeListener : null;
     }
 
-    private void startRevealAnimation(final int index) {
-        View disappearingView = getMainView(index);
+    /**
+     * Sends the FAB sizing diagnostics to {@code logger}. Unset by default, so nothing
+     * is logged; set it only in debug builds.
+     */
+    public void setLogger(RevealLogger logger) {
+        this.logger = logger;
+    }
 
-        ObjectAnimator fabAnimator = getFABAnimator(index);
-        ObjectAnimator alphaAnimator = ObjectAnimator.ofFloat(disappearingView, "alpha", 1, 0);
+    /**
+     * Reports the frame timing of every transition, phase by phase, once it settles. Frames
+     * are timed with the {@link android.view.Choreographer} frame clock, which needs Jelly
+     * Bean; nothing is reported on older versions. Off by default, and costs nothing then.
+     */
+    public void setOnRevealMetricsListener(OnRevealMetricsListener onRevealMetricsListener) {
+        this.onRevealMetricsListener = onRevealMetricsListener;
+    }
 
-        AnimatorSet set = new AnimatorSet();
-        set.play(fabAnimator).with(alphaAnimator);
-        setupAnimationParams(set);
-        set.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                FloatingActionButton fab = fabs.get(index);
-                fab.setVisibility(GONE);
-                prepareForReveal(index);
-                expandCircle(index);
+    private boolean isRecordingMetrics() {
+        return onRevealMetricsListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    /**
+     * Uses the display this layout is shown on. Jelly Bean can't tell which one it is, so it
+     * assumes 60 Hz.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private long getRefreshPeriodNanos() {
+        Display display = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? getDisplay() : null;
+        float refreshRate = display != null ? display.getRefreshRate() : 60;
+        return (long) (1000000000 / (refreshRate > 0 ? refreshRate : 60));
+    }
+
+    private void scheduleProgressDispatch(RevealAnimators animators) {
+        if (onRevealIntentListener != null) {
+            animators.progressDirty = true;
+            if (!progressDispatchPending) {
+                progressDispatchPending = true;
+                post(dispatchProgress);
+            }
+        }
+    }
+
+    private final Runnable dispatchProgress = new Runnable() {
+        @Override
+        public void run() {
+            progressDispatchPending = false;
+            for (int i = 0; i < revealAnimators.size(); i++) {
+                RevealAnimators animators = revealAnimators.valueAt(i);
+                if (animators.progressDirty && onRevealIntentListener != null) {
+                    animators.progressDirty = false;
+                    onRevealIntentListener.onRevealProgress(FABRevealLayout.this,
+                            revealAnimators.keyAt(i), animators.getProgress());
+                }
             }
-        });
+        }
+    };
 
-        set.start();
+    private void startRevealAnimation(int index) {
+        indexAnimated = index;
+        setRevealState(index, STATE_REVEALING);
+        getRevealAnimators(index).startReveal();
     }
 
     private void prepareForReveal(int index) {
+        TraceCompat.beginSection("FABRevealLayout#prepareForReveal");
         FloatingActionButton fab = fabs.get(index);
-        circularExpandingView.getLayoutParams().height = getMainView(index).getHeight();
-        circularExpandingView.setColor(fab.getBackgroundTintList() != null ?
-                fab.getBackgroundTintList().getDefaultColor() - (0x80 << 24) :
-                0x80000000
-        );
+        View mainView = getMainView(index);
+        /* Before the first layout, as on a restore, the main view has no height yet */
+        setOverlayHeight(mainView.getHeight() > 0 ?
+                mainView.getHeight() : mainView.getLayoutParams().height);
+        circularExpandingView.setColor(getOverlayColor(fab));
         circularExpandingView.setVisibility(VISIBLE);
+        TraceCompat.endSection();
     }
 
-    private void setupAnimationParams(Animator animator) {
-        animator.setInterpolator(INTERPOLATOR);
-        animator.setDuration(ANIMATION_DURATION);
+    /**
+     * Gives the overlay back to an index that is still revealed, once the transition of
+     * {@code exceptIndex} has recolored, resized and contracted it.
+     */
+    private void restoreOverlay(int exceptIndex) {
+        for (int i = 0; i < revealStates.size(); i++) {
+            int index = revealStates.keyAt(i);
+            if (index != exceptIndex && revealStates.valueAt(i) == STATE_SECONDARY) {
+                prepareForReveal(index);
+                circularExpandingView.setExpandFraction(1);
+                return;
+            }
+        }
     }
 
-    private CurvedAnimator getCurvedAnimator(int index) {
-        View view = getMainView(index);
-        FloatingActionButton fab = fabs.get(index);
-        float fromX = fab.getLeft();
-        float fromY = fab.getTop();
-        float toX = view.getWidth() / 2 - fab.getWidth() / 2 + view.getLeft();
-        float toY = view.getHeight() / 2 - fab.getHeight() / 2 + view.getTop();
-
-        if (isShowingMainView(index)) {
-            return new CurvedAnimator(fromX, fromY, toX, toY);
-        } else {
-            return new CurvedAnimator(toX, toY, fromX, fromY);
+    /**
+     * A warmed up overlay is invisible rather than gone, so showing it again requests no
+     * layout. A new height has to request one itself, or the overlay keeps the old one.
+     */
+    private void setOverlayHeight(int height) {
+        ViewGroup.LayoutParams params = circularExpandingView.getLayoutParams();
+        if (params.height != height) {
+            params.height = height;
+            circularExpandingView.setLayoutParams(params);
         }
     }
 
-    private ObjectAnimator getFABAnimator(int index) {
-        CurvedAnimator curvedAnimator = getCurvedAnimator(index);
-        return ObjectAnimator.ofObject(this, "fabPosition", new CurvedPathEvaluator(), curvedAnimator.getPoints());
+    private static int getOverlayColor(FloatingActionButton fab) {
+        return fab.getBackgroundTintList() != null ?
+                fab.getBackgroundTintList().getDefaultColor() - (0x80 << 24) :
+                0x80000000;
     }
 
-    private void expandCircle(final int index) {
-        Animator expandAnimator = circularExpandingView.expand();
-        ;
-        expandAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                swapViews(index);
-            }
-        });
-        expandAnimator.start();
+    /**
+     * Once warmed up, the overlay is kept invisible rather than gone, so that it stays laid
+     * out and showing it again doesn't need a layout pass.
+     */
+    private void hideOverlay() {
+        circularExpandingView.setVisibility(warmedUpIndices > 0 ? INVISIBLE : GONE);
     }
 
-    private void startHideAnimationUnusedFAB(final int index) {
-        List<AnimatorSet> sets = new ArrayList<>(fabs.size() - 1);
-        for (int i = 0; i < fabs.size(); i++) {
-            if (i != index) {
-                Animator contractAnimator = circularExpandingView.contract();
-                View disappearingView = fabs.get(i);
-                ObjectAnimator alphaAnimator = ObjectAnimator.ofFloat(disappearingView, "alpha", 1, 0);
-                AnimatorSet set = new AnimatorSet();
-                set.play(contractAnimator).with(alphaAnimator);
-                setupAnimationParams(set);
-                sets.add(set);
-            }
+    /**
+     * Prepares the reveal of every FAB while the main thread is idle after the first layout,
+     * one FAB per idle turn: its animators and listeners and its path. The first reveal then
+     * costs the same as later ones. The overlay is laid out ahead of time too, but not drawn:
+     * it stays invisible until a reveal, which redraws it on every frame anyway. Off by default.
+     */
+    public void setWarmupEnabled(boolean warmupEnabled) {
+        this.warmupEnabled = warmupEnabled;
+        if (warmupEnabled) {
+            scheduleWarmup();
         }
-        for (AnimatorSet set : sets) {
-            set.start();
+    }
+
+    public boolean isWarmupEnabled() {
+        return warmupEnabled;
+    }
+
+    private void scheduleWarmup() {
+        if (warmupEnabled && !warmupScheduled && circularExpandingView != null
+                && getWindowToken() != null && warmedUpIndices < fabs.size()) {
+            warmupScheduled = true;
+            Looper.myQueue().addIdleHandler(warmupIdleHandler);
         }
     }
 
-    private void startShowAnimationUnusedFAB(final int index) {
-        List<AnimatorSet> sets = new ArrayList<>(fabs.size() - 1);
-        for (int i = 0; i < fabs.size(); i++) {
-            if (i != index) {
-                Animator contractAnimator = circularExpandingView.contract();
-                View disappearingView = fabs.get(i);
-                ObjectAnimator alphaAnimator = ObjectAnimator.ofFloat(disappearingView, "alpha", 0, 1);
-                AnimatorSet set = new AnimatorSet();
-                set.play(contractAnimator).with(alphaAnimator);
-                setupAnimationParams(set);
-                sets.add(set);
+    private final MessageQueue.IdleHandler warmupIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (!warmupEnabled || circularExpandingView == null || getWindowToken() == null) {
+                warmupScheduled = false;
+                return false;
             }
+            if (!hasRunningTransition() && warmedUpIndices < fabs.size()) {
+                warmUp(warmedUpIndices++);
+            }
+            warmupScheduled = warmedUpIndices < fabs.size();
+            return warmupScheduled;
         }
-        for (AnimatorSet set : sets) {
-            set.start();
+    };
+
+    private void warmUp(int index) {
+        TraceCompat.beginSection("FABRevealLayout#warmUp");
+        getRevealAnimators(index);
+        getCurvedPath(index);
+        getUnusedFABsAnimator();
+        if (isShowingOnlyMainViews(-1) && circularExpandingView.getVisibility() == GONE) {
+            setOverlayHeight(getMainView(index).getHeight());
+            hideOverlay();
         }
+        TraceCompat.endSection();
     }
 
+    private void setupAnimationParams(Animator animator) {
+        animator.setInterpolator(INTERPOLATOR);
+        animator.setDuration(travelDuration);
+    }
 
-    private void startHideAnimation(final int index) {
-        Animator contractAnimator = circularExpandingView.contract();
-        View disappearingView = getSecondaryView(index);
-        ObjectAnimator alphaAnimator = ObjectAnimator.ofFloat(disappearingView, "alpha", 1, 0);
+    /**
+     * Chooses how much of the choreography runs. {@link #PERFORMANCE_PROFILE_FULL} runs all of
+     * it. {@link #PERFORMANCE_PROFILE_REDUCED} halves every phase and cross-fades the overlay
+     * instead of expanding a circle. {@link #PERFORMANCE_PROFILE_MINIMAL} swaps the views
+     * at once, in the same frame and layout pass as the request, and reports no metrics.
+     * {@link #PERFORMANCE_PROFILE_AUTO}, the default, is minimal when animations are turned off
+     * in the developer options, reduced on low-RAM devices and full otherwise. Every profile is
+     * also scaled by the system animator duration scale.
+     */
+    public void setPerformanceProfile(int performanceProfile) {
+        this.performanceProfile = performanceProfile;
+    }
 
-        AnimatorSet set = new AnimatorSet();
-        set.play(contractAnimator).with(alphaAnimator);
-        setupAnimationParams(set);
-        set.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                FloatingActionButton fab = fabs.get(index);
-                fab.setVisibility(VISIBLE);
-                circularExpandingView.setVisibility(GONE);
-                moveFABToOriginalLocation(index);
-                startShowAnimationUnusedFAB(index);
-            }
-        });
-        set.start();
+    public int getPerformanceProfile() {
+        return performanceProfile;
     }
 
-    public void setFabPosition(Point point) {
-        FloatingActionButton fab = fabs.get(indexAnimated);
-        fab.setX(point.x);
-        fab.setY(point.y);
+    /**
+     * Sets the duration of the FAB travel, which the contraction of the overlay and the fade
+     * of the unused FABs also take. 500 ms by default.
+     */
+    public void setTravelDuration(long travelDuration) {
+        this.travelDuration = travelDuration;
     }
 
-    private void moveFABToOriginalLocation(final int index) {
-        ObjectAnimator fabAnimator = getFABAnimator(index);
+    public long getTravelDuration() {
+        return travelDuration;
+    }
 
-        setupAnimationParams(fabAnimator);
-        fabAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                swapViews(index);
-                indexAnimated = -1;
-            }
-        });
+    /**
+     * Sets the duration of the overlay expansion. 300 ms by default.
+     */
+    public void setExpandDuration(long expandDuration) {
+        this.expandDuration = expandDuration;
+    }
 
-        fabAnimator.start();
+    public long getExpandDuration() {
+        return expandDuration;
     }
 
-    private void swapViews(int index) {
-        if (isShowingMainView(index)) {
-            getMainView(index).setVisibility(GONE);
-            getMainView(index).setAlpha(1);
-            getSecondaryView(index).setVisibility(VISIBLE);
-            circularExpandingView.setVisibility(VISIBLE);
+    private int resolvePerformanceProfile() {
+        if (performanceProfile != PERFORMANCE_PROFILE_AUTO) {
+            return performanceProfile;
+        } else if (getAnimatorDurationScale() == 0) {
+            return PERFORMANCE_PROFILE_MINIMAL;
+        } else if (isLowRamDevice()) {
+            return PERFORMANCE_PROFILE_REDUCED;
         } else {
-            getMainView(index).setVisibility(VISIBLE);
-            getSecondaryView(index).setVisibility(GONE);
-            getSecondaryView(index).setAlpha(1);
-            circularExpandingView.setVisibility(View.GONE);
+            return PERFORMANCE_PROFILE_FULL;
         }
-        notifyListener(index);
     }
 
-    private void notifyListener(int index) {
-        if (onRevealChangeListener != null) {
-            if (isShowingMainView(index)) {
-                onRevealChangeListener.onMainViewAppeared(this, getMainView(index));
+    @SuppressWarnings("deprecation")
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private float getAnimatorDurationScale() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return Settings.Global.getFloat(getContext().getContentResolver(),
+                    Settings.Global.ANIMATOR_DURATION_SCALE, 1);
+        } else {
+            return Settings.System.getFloat(getContext().getContentResolver(),
+                    Settings.System.ANIMATOR_DURATION_SCALE, 1);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private boolean isLowRamDevice() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return false;
+        }
+        ActivityManager activityManager = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager != null && activityManager.isLowRamDevice();
+    }
+
+    private static long scaleDuration(long duration, int profile) {
+        return profile == PERFORMANCE_PROFILE_REDUCED ? duration / 2 : duration;
+    }
+
+    private CurvedPath getCurvedPath(int index) {
+        View view = getMainView(index);
+        FloatingActionButton fab = fabs.get(index);
+        float fromX = fab.getLeft();
+        float fromY = fab.getTop();
+        float toX = view.getWidth() / 2 - fab.getWidth() / 2 + view.getLeft();
+        float toY = view.getHeight() / 2 - fab.getHeight() / 2 + view.getTop();
+
+        CurvedPath path = fabPaths.get(index);
+        if (path == null || !path.matches(fromX, fromY, toX, toY)) {
+            Object[] points = new CurvedAnimator(fromX, fromY, toX, toY).getPoints();
+            if (path == null) {
+                path = new CurvedPath((Point) points[0], (Point) points[1]);
+                fabPaths.put(index, path);
             } else {
-                onRevealChangeListener.onSecondaryViewAppeared(this, getSecondaryView(index));
+                path.set((Point) points[0], (Point) points[1]);
             }
         }
+        return path;
     }
 
-    private View getSecondaryView(int index) {
-        return childViews.get(2 * index + 1);
+    /**
+     * Returns the cached animators for the FAB at {@code index}, building them on first use.
+     */
+    RevealAnimators getRevealAnimators(int index) {
+        RevealAnimators animators = revealAnimators.get(index);
+        if (animators == null) {
+            animators = new RevealAnimators(index);
+            revealAnimators.put(index, animators);
+        }
+        return animators;
     }
 
-    private View getMainView(int index) {
-        return childViews.get(2 * index);
+    private void startHideAnimationUnusedFAB(int index, long duration) {
+        animateUnusedFABs(index, 0, duration);
     }
 
-    private int dipsToPixels(float dips) {
-        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dips, getResources().getDisplayMetrics());
+    private void startShowAnimationUnusedFAB(int index, long duration) {
+        animateUnusedFABs(index, 1, duration);
     }
 
-    @Override
-    public void setLayoutParams(ViewGroup.LayoutParams params) {
-        ((MarginLayoutParams) params).topMargin -= dipsToPixels(fabMaxSize);
-        super.setLayoutParams(params);
+    /**
+     * Fades every FAB showing its main view, except the one at {@code index}, with a single
+     * animator. Start and end alphas are kept in a flat array, two entries per FAB, so each
+     * frame costs one pass. Fades start from the current alpha, so an interrupted one turns
+     * around smoothly. Hidden FABs don't take clicks.
+     */
+    private void animateUnusedFABs(int index, float toAlpha, long duration) {
+        int count = fabs.size();
+        if (unusedFABAlphas == null || unusedFABAlphas.length != 2 * count) {
+            unusedFABAlphas = new float[2 * count];
+        }
+        for (int i = 0; i < count; i++) {
+            boolean unused = i != index && getRevealState(i) == STATE_MAIN;
+            unusedFABAlphas[2 * i] = unused ? fabs.get(i).getAlpha() : Float.NaN;
+            unusedFABAlphas[2 * i + 1] = toAlpha;
+            if (unused) {
+                fabs.get(i).setClickable(toAlpha > 0);
+            }
+        }
+
+        ValueAnimator animator = getUnusedFABsAnimator();
+        animator.cancel();
+        animator.setDuration(duration);
+        animator.start();
+    }
+
+    private ValueAnimator getUnusedFABsAnimator() {
+        if (unusedFABsAnimator == null) {
+            unusedFABsAnimator = ValueAnimator.ofFloat(0, 1);
+            setupAnimationParams(unusedFABsAnimator);
+            unusedFABsAnimator.addUpdateListener(unusedFABsUpdateListener);
+        }
+        return unusedFABsAnimator;
+    }
+
+    final ValueAnimator.AnimatorUpdateListener unusedFABsUpdateListener = new ValueAnimator.AnimatorUpdateListener() {
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            float fraction = animation.getAnimatedFraction();
+            float[] alphas = unusedFABAlphas;
+            for (int i = 0, count = Math.min(fabs.size(), alphas.length / 2); i < count; i++) {
+                float from = alphas[2 * i];
+                if (!Float.isNaN(from)) {
+                    fabs.get(i).setAlpha(from + (alphas[2 * i + 1] - from) * fraction);
+                }
+            }
+        }
+    };
+
+    private void startHideAnimation(int index) {
+        indexAnimated = index;
+        setRevealState(index, STATE_HIDING);
+        getRevealAnimators(index).startHide();
+    }
+
+    /**
+     * Moves the FAB of the most recently started transition. The animations themselves go
+     * through {@link #FAB_POSITION}.
+     */
+    public void setFabPosition(Point point) {
+        FloatingActionButton fab = fabs.get(indexAnimated);
+        fab.setX(point.x);
+        fab.setY(point.y);
+    }
+
+    private void showSecondaryView(int index) {
+        TraceCompat.beginSection("FABRevealLayout#showSecondaryView");
+        getMainView(index).setVisibility(GONE);
+        getMainView(index).setAlpha(1);
+        getSecondaryView(index).setVisibility(VISIBLE);
+        getSecondaryView(index).setAlpha(1);
+        circularExpandingView.setVisibility(VISIBLE);
+        circularExpandingView.setAlpha(1);
+        notifyListener(index);
+        TraceCompat.endSection();
+    }
+
+    private void showMainView(int index) {
+        TraceCompat.beginSection("FABRevealLayout#showMainView");
+        getMainView(index).setVisibility(VISIBLE);
+        getMainView(index).setAlpha(1);
+        getSecondaryView(index).setVisibility(GONE);
+        getSecondaryView(index).setAlpha(1);
+        notifyListener(index);
+        TraceCompat.endSection();
+    }
+
+    /**
+     * Puts the index in its revealed state at once, as the end of a reveal would leave it.
+     */
+    private void jumpToSecondaryView(int index) {
+        if (circularExpandingView == null) {
+            addCircularRevealView();
+        }
+        setRevealState(index, STATE_SECONDARY);
+        fabs.get(index).setVisibility(GONE);
+        prepareForReveal(index);
+        circularExpandingView.setExpandFraction(1);
+        if (unusedFABsAnimator != null) {
+            unusedFABsAnimator.cancel();
+        }
+        for (int i = 0; i < fabs.size(); i++) {
+            if (getRevealState(i) == STATE_MAIN) {
+                fabs.get(i).setAlpha(0);
+                fabs.get(i).setClickable(false);
+            }
+        }
+        showSecondaryView(index);
+    }
+
+    /**
+     * Puts the index back in its main state at once, as the end of a hide would leave it.
+     */
+    private void jumpToMainView(int index) {
+        setRevealState(index, STATE_MAIN);
+        FloatingActionButton fab = fabs.get(index);
+        fab.setVisibility(VISIBLE);
+        fab.setTranslationX(0);
+        fab.setTranslationY(0);
+        if (isShowingOnlyMainViews(-1)) {
+            if (circularExpandingView != null) {
+                hideOverlay();
+                circularExpandingView.setAlpha(1);
+            }
+            if (unusedFABsAnimator != null) {
+                unusedFABsAnimator.cancel();
+            }
+            for (int i = 0; i < fabs.size(); i++) {
+                fabs.get(i).setAlpha(1);
+                fabs.get(i).setClickable(true);
+            }
+        }
+        showMainView(index);
+    }
+
+    /**
+     * Ends every running transition where it was heading, without animating, and applies the
+     * queued requests the same way. Called when the layout is detached, as when a list
+     * recycles its row.
+     */
+    public void settleTransitions() {
+        finishTransitions(true);
+        while (!pendingTransitions.isEmpty()) {
+            int request = pendingTransitions.poll();
+            int index = request / 2;
+            if (index < fabs.size()) {
+                if (request % 2 == 1 && getRevealState(index) == STATE_MAIN) {
+                    jumpToSecondaryView(index);
+                } else if (request % 2 == 0 && getRevealState(index) == STATE_SECONDARY) {
+                    jumpToMainView(index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends every running transition back to where it started, without animating, and drops
+     * the queued requests.
+     */
+    public void cancelTransitions() {
+        pendingTransitions.clear();
+        finishTransitions(false);
+    }
+
+    private void finishTransitions(boolean settle) {
+        for (int i = 0; i < revealAnimators.size(); i++) {
+            int state = getRevealState(revealAnimators.keyAt(i));
+            if (state == STATE_REVEALING || state == STATE_HIDING) {
+                RevealAnimators animators = revealAnimators.valueAt(i);
+                animators.jumpToEnd(settle == (state == STATE_REVEALING), false);
+            }
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (adapter != null && !adapterObserverRegistered) {
+            registerAdapterObserver();
+            /* The data may have changed while detached */
+            populateFromAdapter();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        settleTransitions();
+        unregisterAdapterObserver();
+        removeCallbacks(dispatchProgress);
+        progressDispatchPending = false;
+        if (warmupScheduled) {
+            Looper.myQueue().removeIdleHandler(warmupIdleHandler);
+            warmupScheduled = false;
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState savedState = new SavedState(super.onSaveInstanceState());
+        int revealed = 0;
+        int[] revealedIndices = new int[revealStates.size()];
+        for (int i = 0; i < revealStates.size(); i++) {
+            int state = revealStates.valueAt(i);
+            if (state == STATE_SECONDARY || state == STATE_REVEALING) {
+                revealedIndices[revealed++] = revealStates.keyAt(i);
+            }
+        }
+        savedState.revealedIndices = revealed == revealedIndices.length ?
+                revealedIndices : Arrays.copyOf(revealedIndices, revealed);
+        savedState.firstVisiblePosition = firstVisiblePosition;
+        return savedState;
+    }
+
+    /**
+     * Shows the secondary views that were revealed, or being revealed, when the state was
+     * saved, without animating. Everything is set before the next layout, so the restored
+     * screen takes a single layout pass. With an adapter, the indices are kept until the
+     * FABs are bound, which before the first layout happens in the measure pass.
+     */
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        restoredIndices = savedState.revealedIndices;
+        if (adapter != null) {
+            firstVisiblePosition = savedState.firstVisiblePosition;
+            populateFromAdapter();
+        } else {
+            restoreRevealedIndices();
+        }
+    }
+
+    private void restoreRevealedIndices() {
+        int[] indices = restoredIndices;
+        restoredIndices = null;
+        for (int index : indices) {
+            if (index < fabs.size() && getRevealState(index) == STATE_MAIN) {
+                jumpToSecondaryView(index);
+            }
+        }
+    }
+
+    private void notifyListener(int index) {
+        if (onRevealChangeListener != null) {
+            if (isShowingMainView(index)) {
+                onRevealChangeListener.onMainViewAppeared(this, getMainView(index));
+            } else {
+                onRevealChangeListener.onSecondaryViewAppeared(this, getSecondaryView(index));
+            }
+        }
+    }
+
+    /**
+     * Returns the secondary view at {@code index}, inflating it first if it was declared as a
+     * {@link ViewStub}. The stub's layout is used when it has one, the
+     * {@link SecondaryViewFactory} otherwise.
+     */
+    private View getSecondaryView(int index) {
+        View view = childViews.get(2 * index + 1);
+        if (!(view instanceof ViewStub)) {
+            return view;
+        }
+
+        ViewStub stub = (ViewStub) view;
+        pendingSecondaryIndex = index;
+        try {
+            if (stub.getLayoutResource() != 0) {
+                secondaryLayoutResources.put(index, stub.getLayoutResource());
+                stub.inflate();
+            } else if (secondaryViewFactory != null) {
+                View secondaryView = secondaryViewFactory.createSecondaryView(this, index);
+                int childIndex = indexOfChild(stub);
+                removeViewInLayout(stub);
+                addView(secondaryView, childIndex, secondaryView.getLayoutParams() != null ?
+                        secondaryView.getLayoutParams() : stub.getLayoutParams());
+            } else {
+                throw new IllegalStateException("No layout or SecondaryViewFactory for the secondary view at " + index);
+            }
+        } finally {
+            pendingSecondaryIndex = -1;
+        }
+        View secondaryView = childViews.get(2 * index + 1);
+        inflatedSecondaryViews.put(index, secondaryView);
+        trimSecondaryViews(index);
+        return secondaryView;
+    }
+
+    private boolean isSecondaryViewInflated(int index) {
+        return !(childViews.get(2 * index + 1) instanceof ViewStub);
+    }
+
+    /**
+     * Records a reveal of a lazily created secondary view, which is a hit when it is still
+     * inflated and a miss when it has to be created.
+     */
+    private void recordSecondaryViewAccess(int index) {
+        if (isSecondaryViewInflated(index)) {
+            if (inflatedSecondaryViews.get(index) != null) {
+                secondaryViewCacheHits++;
+            }
+        } else {
+            secondaryViewCacheMisses++;
+        }
+    }
+
+    /**
+     * Releases the least recently revealed secondary views over the limit. Views currently
+     * shown or animating, and the one at {@code keepIndex}, are skipped and released by a
+     * later trim.
+     */
+    private void trimSecondaryViews(int keepIndex) {
+        Iterator<Map.Entry<Integer, View>> iterator = inflatedSecondaryViews.entrySet().iterator();
+        while (inflatedSecondaryViews.size() > maxInflatedSecondaryViews && iterator.hasNext()) {
+            Map.Entry<Integer, View> entry = iterator.next();
+            int index = entry.getKey();
+            View view = entry.getValue();
+            if (index != keepIndex && getRevealState(index) == STATE_MAIN && view.getVisibility() == GONE) {
+                iterator.remove();
+                releaseSecondaryView(index, view);
+            }
+        }
+    }
+
+    /**
+     * Replaces a secondary view with a stub that recreates it on demand, from the same layout
+     * or from the {@link SecondaryViewFactory}.
+     */
+    private void releaseSecondaryView(int index, View view) {
+        ViewStub stub = new ViewStub(getContext(), secondaryLayoutResources.get(index));
+        stub.setInflatedId(view.getId());
+        int childIndex = indexOfChild(view);
+        removeViewInLayout(view);
+        addViewInLayout(stub, childIndex, view.getLayoutParams(), true);
+        childViews.set(2 * index + 1, stub);
+
+        if (adapter != null) {
+            secondaryScrap.add(view);
+        }
+    }
+
+    /**
+     * Keeps at most {@code maxInflatedSecondaryViews} lazily created secondary views, see
+     * {@link #setSecondaryViewFactory(SecondaryViewFactory)}. The least recently revealed ones
+     * are detached and created again when needed. Unbounded by default.
+     */
+    public void setMaxInflatedSecondaryViews(int maxInflatedSecondaryViews) {
+        this.maxInflatedSecondaryViews = Math.max(1, maxInflatedSecondaryViews);
+        trimSecondaryViews(-1);
+    }
+
+    /**
+     * Binds the FABs and their views from {@code adapter} instead of static children. Only as
+     * many FABs as fit at their maximum size exist at a time, starting at the first visible
+     * position, and secondary views are created the first time they are revealed. While an
+     * adapter is set, indices given to this layout are relative to the first visible position.
+     * How many FABs fit is known from the measure pass, so an adapter set before the first
+     * layout is bound during that layout. Give the layout a bounded size along its FABs: when
+     * it is measured without one, as in a scrolling parent, it keeps the last bounded count,
+     * or binds {@value #DEFAULT_ADAPTER_CAPACITY} FABs if it has never had one. The adapter is
+     * only observed while the layout is attached to a window.
+     */
+    public void setAdapter(FABRevealAdapter adapter) {
+        unregisterAdapterObserver();
+        this.adapter = adapter;
+        firstVisiblePosition = 0;
+        if (adapter != null) {
+            if (getWindowToken() != null) {
+                registerAdapterObserver();
+            }
+            secondaryViewFactory = adapterSecondaryViewFactory;
+            populateFromAdapter();
+        }
+    }
+
+    private void registerAdapterObserver() {
+        adapter.registerDataSetObserver(adapterObserver);
+        adapterObserverRegistered = true;
+    }
+
+    private void unregisterAdapterObserver() {
+        if (adapterObserverRegistered) {
+            adapter.unregisterDataSetObserver(adapterObserver);
+            adapterObserverRegistered = false;
+        }
+    }
+
+    public FABRevealAdapter getAdapter() {
+        return adapter;
+    }
+
+    public void setFirstVisiblePosition(int firstVisiblePosition) {
+        this.firstVisiblePosition = firstVisiblePosition;
+        populateFromAdapter();
+    }
+
+    public int getFirstVisiblePosition() {
+        return firstVisiblePosition;
+    }
+
+    public int getPositionForIndex(int index) {
+        return adapter != null ? firstVisiblePosition + index : index;
+    }
+
+    private int getAdapterCapacity(int availablePx) {
+        return Math.max(1, availablePx / (fabMaxSizePx + fabPaddingPx));
+    }
+
+    /**
+     * Makes the FABs and views match the adapter, reusing the ones already attached and
+     * recycling the rest. Deferred while a transition is running, and until the first
+     * measure pass says how many FABs fit.
+     */
+    private void populateFromAdapter() {
+        if (adapter == null || adapterCapacity == 0) {
+            return;
+        } else if (!isShowingOnlyMainViews(-1)) {
+            adapterPopulatePending = true;
+            return;
+        }
+        adapterPopulatePending = false;
+
+        int count = adapter.getCount();
+        int capacity = adapterCapacity;
+        firstVisiblePosition = Math.max(0, Math.min(firstVisiblePosition, count - capacity));
+        int slots = Math.min(count, capacity);
+
+        if (circularExpandingView != null) {
+            hideOverlay();
+        }
+        warmedUpIndices = 0;
+        while (fabs.size() > slots) {
+            removeAdapterSlot();
+        }
+        for (int i = 0; i < slots; i++) {
+            if (i < fabs.size()) {
+                bindAdapterSlot(i);
+            } else {
+                addAdapterSlot(i);
+            }
+        }
+        if (restoredIndices != null) {
+            restoreRevealedIndices();
+        }
+        requestLayout();
+        invalidate();
+    }
+
+    private void addAdapterSlot(int index) {
+        int position = firstVisiblePosition + index;
+        FloatingActionButton fab = adapter.createFAB(this);
+        adapter.onBindFAB(fab, position);
+        addView(fab);
+
+        View mainView = adapter.getMainView(position, popScrapView(mainScrap), this);
+        addView(mainView, getContentLayoutParams(mainView));
+        addView(new ViewStub(getContext()), getContentLayoutParams(null));
+    }
+
+    private void bindAdapterSlot(int index) {
+        int position = firstVisiblePosition + index;
+        resetAdapterSlot(index);
+        adapter.onBindFAB(fabs.get(index), position);
+
+        View mainView = childViews.get(2 * index);
+        View boundView = adapter.getMainView(position, mainView, this);
+        if (boundView != mainView) {
+            int childIndex = indexOfChild(mainView);
+            removeViewInLayout(mainView);
+            mainScrap.add(mainView);
+            childViews.set(2 * index, boundView);
+            addViewInLayout(boundView, childIndex, getContentLayoutParams(boundView), true);
+        }
+
+        if (isSecondaryViewInflated(index)) {
+            inflatedSecondaryViews.remove(index);
+            releaseSecondaryView(index, childViews.get(2 * index + 1));
+        }
+    }
+
+    private void removeAdapterSlot() {
+        int index = fabs.size() - 1;
+        resetAdapterSlot(index);
+
+        View fab = fabs.remove(index);
+        fabIndex--;
+        removeView(fab);
+
+        View secondaryView = childViews.remove(2 * index + 1);
+        View mainView = childViews.remove(2 * index);
+        removeView(mainView);
+        removeView(secondaryView);
+        mainScrap.add(mainView);
+        if (!(secondaryView instanceof ViewStub)) {
+            secondaryScrap.add(secondaryView);
+        }
+
+        revealAnimators.remove(index);
+        revealStates.delete(index);
+        fabPaths.remove(index);
+        inflatedSecondaryViews.remove(index);
+        secondaryLayoutResources.delete(index);
+    }
+
+    private void resetAdapterSlot(int index) {
+        FloatingActionButton fab = fabs.get(index);
+        fab.setVisibility(VISIBLE);
+        fab.setAlpha(1);
+        fab.setTranslationX(0);
+        fab.setTranslationY(0);
+
+        View mainView = childViews.get(2 * index);
+        mainView.setVisibility(VISIBLE);
+        mainView.setAlpha(1);
+
+        View secondaryView = childViews.get(2 * index + 1);
+        secondaryView.setVisibility(GONE);
+        secondaryView.setAlpha(1);
+    }
+
+    private ViewGroup.LayoutParams getContentLayoutParams(View view) {
+        if (view != null && view.getLayoutParams() != null) {
+            return view.getLayoutParams();
+        }
+        return new MarginLayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+    }
+
+    private static View popScrapView(List<View> scrap) {
+        return scrap.isEmpty() ? null : scrap.remove(scrap.size() - 1);
+    }
+
+    private final DataSetObserver adapterObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            populateFromAdapter();
+        }
+
+        @Override
+        public void onInvalidated() {
+            populateFromAdapter();
+        }
+    };
+
+    private final SecondaryViewFactory adapterSecondaryViewFactory = new SecondaryViewFactory() {
+        @Override
+        public View createSecondaryView(FABRevealLayout fabRevealLayout, int index) {
+            return adapter.getSecondaryView(firstVisiblePosition + index, popScrapView(secondaryScrap), fabRevealLayout);
+        }
+    };
+
+    public int getSecondaryViewCacheHitCount() {
+        return secondaryViewCacheHits;
+    }
+
+    public int getSecondaryViewCacheMissCount() {
+        return secondaryViewCacheMisses;
+    }
+
+    /**
+     * Provides the secondary views declared as an empty {@link ViewStub}. They are created on
+     * the first reveal of their index, while the FAB travels.
+     */
+    public void setSecondaryViewFactory(SecondaryViewFactory secondaryViewFactory) {
+        this.secondaryViewFactory = secondaryViewFactory;
+    }
+
+    private View getMainView(int index) {
+        return childViews.get(2 * index);
+    }
+
+    private int dipsToPixels(float dips) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dips, getResources().getDisplayMetrics());
+    }
+
+    /**
+     * Moves the layout up so that the FABs overlap the view above. The offset is applied only
+     * once per params instance, so setting the same params again doesn't keep shifting it.
+     */
+    @Override
+    public void setLayoutParams(ViewGroup.LayoutParams params) {
+        if (params != offsetLayoutParams && params instanceof MarginLayoutParams) {
+            ((MarginLayoutParams) params).topMargin -= fabMaxSizePx;
+            offsetLayoutParams = params;
+        }
+        super.setLayoutParams(params);
+    }
+
+    /**
+     * Drives the transition of one FAB with two reversible phases: the travel, which moves the
+     * FAB along its path while the main view fades, and the circle, which expands the overlay
+     * while the secondary view fades in. A hide plays the same phases backwards, so a request
+     * in the opposite direction only flips the running phase where it stands. Its update
+     * listeners are package-private so tests can drive frames without the animation clock.
+     */
+    class RevealAnimators implements RevealCoordinator.Transition {
+
+        private final int index;
+        private final Point fabPosition = new Point(0, 0);
+        private final ValueAnimator travelAnimator;
+        private final ValueAnimator circleAnimator;
+        private final HardwareLayerListener travelLayerListener = new HardwareLayerListener();
+        private final HardwareLayerListener circleLayerListener = new HardwareLayerListener();
+        private CurvedPath path;
+        private View mainView, secondaryView;
+        private Animator nativeExpandAnimator = null;
+        private long nativeExpandStartTime, nativeExpandDuration;
+        private boolean revealing = false;
+        private int profile = PERFORMANCE_PROFILE_FULL;
+        private boolean jumping = false;
+        private boolean progressDirty = false;
+        private RevealMetricsRecorder metricsRecorder = null;
+
+        RevealAnimators(int index) {
+            TraceCompat.beginSection("FABRevealLayout#createAnimators");
+            this.index = index;
+
+            travelAnimator = ValueAnimator.ofFloat(0, 1);
+            setupAnimationParams(travelAnimator);
+            travelAnimator.addUpdateListener(travelUpdateListener);
+            travelAnimator.addListener(travelLayerListener);
+            travelAnimator.addListener(travelListener);
+
+            circleAnimator = ValueAnimator.ofFloat(0, 1);
+            circleAnimator.setInterpolator(CircularExpandingView.INTERPOLATOR);
+            circleAnimator.addUpdateListener(circleUpdateListener);
+            circleAnimator.addListener(circleLayerListener);
+            circleAnimator.addListener(circleListener);
+            TraceCompat.endSection();
+        }
+
+        void startReveal() {
+            revealing = true;
+            profile = resolvePerformanceProfile();
+            if (profile == PERFORMANCE_PROFILE_MINIMAL) {
+                recordSecondaryViewAccess(index);
+                jumpToEnd(true, true);
+                return;
+            }
+            startMetrics();
+            RevealCoordinator.getInstance().onTransitionStarted(this);
+            recordSecondaryViewAccess(index);
+            startTravel();
+            if (!isSecondaryViewInflated(index)) {
+                post(inflateSecondaryView);
+            }
+        }
+
+        void startHide() {
+            revealing = false;
+            profile = resolvePerformanceProfile();
+            if (profile == PERFORMANCE_PROFILE_MINIMAL) {
+                jumpToEnd(false, true);
+                return;
+            }
+            startMetrics();
+            RevealCoordinator.getInstance().onTransitionStarted(this);
+            startCircle();
+        }
+
+        /**
+         * Sends the running phase back the way it came, from its current fraction.
+         */
+        void reverse() {
+            revealing = !revealing;
+            if (travelAnimator.isRunning()) {
+                beginMetricsPhase(revealing ? RevealMetrics.PHASE_TRAVEL : RevealMetrics.PHASE_RETURN);
+                travelAnimator.reverse();
+                updateUnusedFABs();
+            } else if (circleAnimator.isRunning()) {
+                beginMetricsPhase(revealing ? RevealMetrics.PHASE_EXPAND : RevealMetrics.PHASE_CONTRACT);
+                circleAnimator.reverse();
+            } else if (nativeExpandAnimator != null) {
+                beginMetricsPhase(RevealMetrics.PHASE_CONTRACT);
+                reverseNativeExpand();
+            }
+        }
+
+        @Override
+        public void settle() {
+            jumpToEnd(revealing, true);
+        }
+
+        /**
+         * Stops the animators and shows the final state of the transition at once, on the
+         * secondary view or back on the main view.
+         */
+        void jumpToEnd(boolean toSecondary, boolean resumeQueue) {
+            jumping = true;
+            if (nativeExpandAnimator != null) {
+                Animator animator = nativeExpandAnimator;
+                nativeExpandAnimator = null;
+                animator.cancel();
+            }
+            travelAnimator.cancel();
+            circleAnimator.cancel();
+            jumping = false;
+
+            beginMetricsPhase(RevealMetrics.PHASE_SWAP);
+            if (toSecondary) {
+                jumpToSecondaryView(index);
+            } else {
+                jumpToMainView(index);
+            }
+            onSettled(toSecondary);
+            if (!toSecondary) {
+                trimSecondaryViews(-1);
+            }
+            if (resumeQueue) {
+                onTransitionSettled();
+            }
+        }
+
+        private void onSettled(boolean revealed) {
+            finishMetrics(revealed);
+            RevealCoordinator.getInstance().onTransitionFinished(this);
+            scheduleProgressDispatch(this);
+        }
+
+        /**
+         * Starts timing a transition when a metrics listener is set. A transition that is
+         * reversed mid-flight keeps being timed until it settles.
+         */
+        private void startMetrics() {
+            if (!isRecordingMetrics()) {
+                metricsRecorder = null;
+                return;
+            }
+            if (metricsRecorder == null) {
+                metricsRecorder = new RevealMetricsRecorder(getRefreshPeriodNanos());
+            }
+            metricsRecorder.start();
+        }
+
+        private void beginMetricsPhase(int phase) {
+            if (metricsRecorder != null && metricsRecorder.isRecording()) {
+                metricsRecorder.beginPhase(phase);
+            }
+        }
+
+        private void finishMetrics(boolean revealed) {
+            if (metricsRecorder != null && metricsRecorder.isRecording()) {
+                RevealMetrics metrics = metricsRecorder.finish(index, revealed);
+                if (onRevealMetricsListener != null) {
+                    onRevealMetricsListener.onRevealMetrics(FABRevealLayout.this, metrics);
+                }
+            }
+        }
+
+        float getProgress() {
+            if (travelAnimator.isRunning()) {
+                return 0.5f * travelAnimator.getAnimatedFraction();
+            } else if (circleAnimator.isRunning()) {
+                return 0.5f + 0.5f * circleAnimator.getAnimatedFraction();
+            } else if (nativeExpandAnimator != null) {
+                long elapsed = AnimationUtils.currentAnimationTimeMillis() - nativeExpandStartTime;
+                return 0.5f + 0.5f * Math.min(1, (float) elapsed / Math.max(1, nativeExpandDuration));
+            }
+            return getRevealState(index) == STATE_SECONDARY ? 1 : 0;
+        }
+
+        private void startTravel() {
+            path = getCurvedPath(index);
+            mainView = getMainView(index);
+            mainView.setVisibility(VISIBLE);
+            fabs.get(index).setVisibility(VISIBLE);
+            travelLayerListener.setView(mainView);
+            beginMetricsPhase(revealing ? RevealMetrics.PHASE_TRAVEL : RevealMetrics.PHASE_RETURN);
+            updateUnusedFABs();
+            travelAnimator.setDuration(scaleDuration(travelDuration, profile));
+            if (revealing) {
+                travelAnimator.start();
+            } else {
+                travelAnimator.reverse();
+            }
+        }
+
+        private void updateUnusedFABs() {
+            long duration = scaleDuration(travelDuration, profile);
+            if (revealing) {
+                startHideAnimationUnusedFAB(index, duration);
+            } else if (isShowingOnlyMainViews(index)) {
+                startShowAnimationUnusedFAB(index, duration);
+            }
+        }
+
+        private void startCircle() {
+            mainView = getMainView(index);
+            secondaryView = getSecondaryView(index);
+            secondaryView.setVisibility(VISIBLE);
+            fabs.get(index).setVisibility(GONE);
+            prepareForReveal(index);
+            circleLayerListener.setView(secondaryView);
+            beginMetricsPhase(revealing ? RevealMetrics.PHASE_EXPAND : RevealMetrics.PHASE_CONTRACT);
+            if (profile != PERFORMANCE_PROFILE_FULL) {
+                /* Cross-fade: the overlay is drawn once as a rect and only its alpha changes */
+                circularExpandingView.setExpandFraction(1);
+            }
+            if (!revealing) {
+                circleAnimator.setDuration(scaleDuration(travelDuration, profile));
+                circleAnimator.reverse();
+            } else if (profile == PERFORMANCE_PROFILE_FULL && isNativeRevealActive()) {
+                startNativeExpand();
+            } else {
+                circleAnimator.setDuration(scaleDuration(expandDuration, profile));
+                circleAnimator.start();
+            }
+        }
+
+        /**
+         * Runs after the travel has started, so creating the secondary view overlaps with it
+         * instead of delaying the first frame.
+         */
+        private final Runnable inflateSecondaryView = new Runnable() {
+            @Override
+            public void run() {
+                getSecondaryView(index);
+            }
+        };
+
+        /**
+         * Platform reveal animators are single use, so unlike the other phases this one is
+         * built for every reveal. The overlay is drawn fully expanded once and both it and
+         * the secondary view are clipped by the RenderThread.
+         */
+        @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+        private void startNativeExpand() {
+            int cx = mainView.getWidth() / 2;
+            int cy = mainView.getHeight() / 2;
+
+            circularExpandingView.setExpandFraction(1);
+            circularExpandingView.setAnimationDuration(expandDuration);
+            secondaryView.setAlpha(1);
+
+            AnimatorSet set = new AnimatorSet();
+            set.playTogether(circularExpandingView.expandNatively(circularExpandingView, cx, cy),
+                    circularExpandingView.expandNatively(secondaryView, cx, cy));
+            set.addListener(nativeExpandListener);
+            nativeExpandAnimator = set;
+            nativeExpandStartTime = AnimationUtils.currentAnimationTimeMillis();
+            nativeExpandDuration = expandDuration;
+            set.start();
+            scheduleProgressDispatch(this);
+        }
+
+        /**
+         * The platform animator can't run backwards, so it is cancelled and the software
+         * circle takes over from the fraction it had reached.
+         */
+        private void reverseNativeExpand() {
+            Animator animator = nativeExpandAnimator;
+            nativeExpandAnimator = null;
+            animator.cancel();
+
+            long duration = nativeExpandDuration;
+            long elapsed = AnimationUtils.currentAnimationTimeMillis() - nativeExpandStartTime;
+            circleAnimator.setDuration(duration);
+            circleAnimator.reverse();
+            circleAnimator.setCurrentPlayTime(Math.max(0, duration - elapsed));
+        }
+
+        final ValueAnimator.AnimatorUpdateListener travelUpdateListener = new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                float fraction = animation.getAnimatedFraction();
+                path.evaluateAtDistance(fraction, fabPosition);
+                FAB_POSITION.set(fabs.get(index), fabPosition);
+                mainView.setAlpha(1 - fraction);
+                scheduleProgressDispatch(RevealAnimators.this);
+            }
+        };
+
+        final ValueAnimator.AnimatorUpdateListener circleUpdateListener = new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                float fraction = animation.getAnimatedFraction();
+                if (profile == PERFORMANCE_PROFILE_FULL) {
+                    circularExpandingView.setExpandFraction(0.1f + 0.9f * fraction);
+                } else {
+                    circularExpandingView.setAlpha(fraction);
+                }
+                secondaryView.setAlpha(fraction);
+                scheduleProgressDispatch(RevealAnimators.this);
+            }
+        };
+
+        private final AnimatorListenerAdapter travelListener = new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                super.onAnimationEnd(animation);
+                if (jumping) {
+                    return;
+                } else if (revealing) {
+                    startCircle();
+                } else {
+                    beginMetricsPhase(RevealMetrics.PHASE_SWAP);
+                    showMainView(index);
+                    setRevealState(index, STATE_MAIN);
+                    onSettled(false);
+                    trimSecondaryViews(-1);
+                    onTransitionSettled();
+                }
+            }
+        };
+
+        private final AnimatorListenerAdapter circleListener = new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                super.onAnimationEnd(animation);
+                if (jumping) {
+                    return;
+                } else if (revealing) {
+                    onExpanded();
+                } else {
+                    secondaryView.setVisibility(GONE);
+                    secondaryView.setAlpha(1);
+                    if (isShowingOnlyMainViews(index)) {
+                        hideOverlay();
+                    } else {
+                        restoreOverlay(index);
+                    }
+                    circularExpandingView.setAlpha(1);
+                    startTravel();
+                }
+            }
+        };
+
+        private final AnimatorListenerAdapter nativeExpandListener = new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                super.onAnimationEnd(animation);
+                if (animation == nativeExpandAnimator) {
+                    nativeExpandAnimator = null;
+                    onExpanded();
+                }
+            }
+        };
+
+        private void onExpanded() {
+            beginMetricsPhase(RevealMetrics.PHASE_SWAP);
+            showSecondaryView(index);
+            setRevealState(index, STATE_SECONDARY);
+            onSettled(true);
+            onTransitionSettled();
+        }
+    }
+
+
+    /**
+     * Creates a configured layout in code, without inflating XML. Every option calls the
+     * layout setter of the same name, so unset options keep the layout defaults. Views added
+     * with {@link #addFAB(FloatingActionButton, View, View)} fill the content area unless they
+     * already have layout params. Each builder builds a single layout.
+     */
+    public static class Builder {
+
+        private final FABRevealLayout layout;
+
+        public Builder(Context context) {
+            layout = new FABRevealLayout(context);
+        }
+
+        public Builder setFabMaxSizePx(int fabMaxSizePx) {
+            layout.setFabMaxSizePx(fabMaxSizePx);
+            return this;
+        }
+
+        public Builder setFabOrientation(int fabOrientation) {
+            layout.setFabOrientation(fabOrientation);
+            return this;
+        }
+
+        public Builder setRevealPolicy(int revealPolicy) {
+            layout.setRevealPolicy(revealPolicy);
+            return this;
+        }
+
+        public Builder setPerformanceProfile(int performanceProfile) {
+            layout.setPerformanceProfile(performanceProfile);
+            return this;
+        }
+
+        public Builder setTravelDuration(long travelDuration) {
+            layout.setTravelDuration(travelDuration);
+            return this;
+        }
+
+        public Builder setExpandDuration(long expandDuration) {
+            layout.setExpandDuration(expandDuration);
+            return this;
+        }
+
+        public Builder setNativeRevealEnabled(boolean nativeRevealEnabled) {
+            layout.setNativeRevealEnabled(nativeRevealEnabled);
+            return this;
+        }
+
+        public Builder setHardwareLayersEnabled(boolean hardwareLayersEnabled) {
+            layout.setHardwareLayersEnabled(hardwareLayersEnabled);
+            return this;
+        }
+
+        public Builder setHardwareLayerPolicy(HardwareLayerPolicy hardwareLayerPolicy) {
+            layout.setHardwareLayerPolicy(hardwareLayerPolicy);
+            return this;
+        }
+
+        public Builder setWarmupEnabled(boolean warmupEnabled) {
+            layout.setWarmupEnabled(warmupEnabled);
+            return this;
+        }
+
+        public Builder setLogger(RevealLogger logger) {
+            layout.setLogger(logger);
+            return this;
+        }
+
+        public Builder setSecondaryViewFactory(SecondaryViewFactory secondaryViewFactory) {
+            layout.setSecondaryViewFactory(secondaryViewFactory);
+            return this;
+        }
+
+        public Builder setMaxInflatedSecondaryViews(int maxInflatedSecondaryViews) {
+            layout.setMaxInflatedSecondaryViews(maxInflatedSecondaryViews);
+            return this;
+        }
+
+        public Builder setOnRevealChangeListener(OnRevealChangeListener onRevealChangeListener) {
+            layout.setOnRevealChangeListener(onRevealChangeListener);
+            return this;
+        }
+
+        public Builder setOnRevealMetricsListener(OnRevealMetricsListener onRevealMetricsListener) {
+            layout.setOnRevealMetricsListener(onRevealMetricsListener);
+            return this;
+        }
+
+        public Builder setAdapter(FABRevealAdapter adapter) {
+            layout.setAdapter(adapter);
+            return this;
+        }
+
+        public Builder addFAB(FloatingActionButton fab, View mainView, View secondaryView) {
+            layout.addView(fab);
+            layout.addView(mainView, layout.getContentLayoutParams(mainView));
+            layout.addView(secondaryView, layout.getContentLayoutParams(secondaryView));
+            return this;
+        }
+
+        public FABRevealLayout build() {
+            return layout;
+        }
+    }
+
+    static class SavedState extends BaseSavedState {
+
+        int[] revealedIndices;
+        int firstVisiblePosition;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel source) {
+            super(source);
+            revealedIndices = source.createIntArray();
+            firstVisiblePosition = source.readInt();
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            super.writeToParcel(dest, flags);
+            dest.writeIntArray(revealedIndices);
+            dest.writeInt(firstVisiblePosition);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+
+    /**
+     * Promotes a fading view to a hardware layer for the duration of an animation and releases
+     * it afterwards. A reversed animation keeps the layer until it ends. Views that already
+     * have a layer are left untouched.
+     */
+    private class HardwareLayerListener extends AnimatorListenerAdapter {
+
+        private View view = null;
+        private View layeredView = null;
+
+        void setView(View view) {
+            this.view = view;
+        }
+
+        @Override
+        public void onAnimationStart(Animator animation) {
+            if (view != null && layeredView == null && shouldUseHardwareLayer(view)) {
+                view.setLayerType(LAYER_TYPE_HARDWARE, null);
+                layeredView = view;
+            }
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (layeredView != null) {
+                layeredView.setLayerType(LAYER_TYPE_NONE, null);
+                layeredView = null;
+            }
+        }
     }
 
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+/**
+ * An {@link OnRevealChangeListener} that also hears about transitions as soon as they are
+ * requested, so that content for the secondary view can be loaded while the FAB travels.
+ */
+public interface OnRevealIntentListener extends OnRevealChangeListener {
+
+    /**
+     * Called when a FAB is clicked or {@link FABRevealLayout#revealSecondaryView(int)} is
+     * called, before any animation frame. Not called when the index is already heading to its
+     * secondary view.
+     */
+    void onRevealRequested(FABRevealLayout fabRevealLayout, int index);
+
+    /**
+     * Called when {@link FABRevealLayout#revealMainView(int)} is called and the index was
+     * heading to its secondary view, including a reveal that is interrupted or still waiting.
+     */
+    void onHideRequested(FABRevealLayout fabRevealLayout, int index);
+
+    /**
+     * Reports how far the index is from its main view, from 0 to 1, where the FAB travel
+     * takes the first half and the circle the second. Coalesced to at most one call per index
+     * and message loop turn; the last call of a transition reports 0 or 1.
+     */
+    void onRevealProgress(FABRevealLayout fabRevealLayout, int index, float progress);
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps track of the transitions running in every {@link FABRevealLayout} of the process, so
+ * that screens with many of them, such as list rows, don't animate more than a few at once.
+ * When a transition starts over the limit, the oldest running one jumps to its end. Layouts
+ * settle their own transitions when they are detached, which also covers recycled rows.
+ * Only used from the main thread.
+ */
+public class RevealCoordinator {
+
+    private static final int DEFAULT_MAX_RUNNING_TRANSITIONS = 4;
+
+    private static RevealCoordinator instance = null;
+
+    private final ArrayDeque<Transition> runningTransitions = new ArrayDeque<>();
+    private int maxRunningTransitions = DEFAULT_MAX_RUNNING_TRANSITIONS;
+
+    interface Transition {
+        void settle();
+    }
+
+    public static RevealCoordinator getInstance() {
+        if (instance == null) {
+            instance = new RevealCoordinator();
+        }
+        return instance;
+    }
+
+    private RevealCoordinator() {
+    }
+
+    /**
+     * Sets how many transitions may animate at the same time across all layouts. 4 by
+     * default.
+     */
+    public void setMaxRunningTransitions(int maxRunningTransitions) {
+        this.maxRunningTransitions = Math.max(1, maxRunningTransitions);
+        trim();
+    }
+
+    public int getMaxRunningTransitions() {
+        return maxRunningTransitions;
+    }
+
+    public int getRunningTransitionCount() {
+        return runningTransitions.size();
+    }
+
+    void onTransitionStarted(Transition transition) {
+        if (!runningTransitions.contains(transition)) {
+            runningTransitions.add(transition);
+            trim();
+        }
+    }
+
+    void onTransitionFinished(Transition transition) {
+        runningTransitions.remove(transition);
+    }
+
+    private void trim() {
+        while (runningTransitions.size() > maxRunningTransitions) {
+            runningTransitions.poll().settle();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Frame timing of one transition of a FAB, from the request until it settles on its main or
+ * secondary view. A transition that is reversed mid-flight lists the phases it went through
+ * in order, so a phase can appear more than once.
+ */
+public class RevealMetrics {
+
+    public static final int PHASE_TRAVEL = 0;
+    public static final int PHASE_EXPAND = 1;
+    public static final int PHASE_SWAP = 2;
+    public static final int PHASE_CONTRACT = 3;
+    public static final int PHASE_RETURN = 4;
+
+    private static final String[] PHASE_NAMES = {"travel", "expand", "swap", "contract", "return"};
+
+    private final int index;
+    private final boolean revealed;
+    private final Phase[] phases;
+
+    RevealMetrics(int index, boolean revealed, List<Phase> phases) {
+        this.index = index;
+        this.revealed = revealed;
+        this.phases = phases.toArray(new Phase[phases.size()]);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Whether the transition settled on the secondary view.
+     */
+    public boolean isRevealed() {
+        return revealed;
+    }
+
+    public int getPhaseCount() {
+        return phases.length;
+    }
+
+    public Phase getPhase(int i) {
+        return phases[i];
+    }
+
+    public int getFrameCount() {
+        int frames = 0;
+        for (Phase phase : phases) {
+            frames += phase.getFrameCount();
+        }
+        return frames;
+    }
+
+    public int getDroppedFrameCount() {
+        int dropped = 0;
+        for (Phase phase : phases) {
+            dropped += phase.getDroppedFrameCount();
+        }
+        return dropped;
+    }
+
+    public long getDurationNanos() {
+        long duration = 0;
+        for (Phase phase : phases) {
+            duration += phase.getDurationNanos();
+        }
+        return duration;
+    }
+
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("RevealMetrics{index=").append(index)
+                .append(", revealed=").append(revealed);
+        for (Phase phase : phases) {
+            builder.append(", ").append(phase);
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Frames of one phase, timed by the interval between consecutive vsyncs. A frame is
+     * dropped for every refresh period an interval spans beyond the first.
+     */
+    public static class Phase {
+
+        private final int phase;
+        private final long durationNanos;
+        private final long[] frameNanos;
+        private final int droppedFrames;
+
+        Phase(int phase, long durationNanos, long[] frameNanos, long refreshPeriodNanos) {
+            this.phase = phase;
+            this.durationNanos = durationNanos;
+            this.frameNanos = frameNanos;
+            Arrays.sort(frameNanos);
+            int dropped = 0;
+            for (long frame : frameNanos) {
+                dropped += Math.max(0, Math.round((double) frame / refreshPeriodNanos) - 1);
+            }
+            this.droppedFrames = dropped;
+        }
+
+        public int getPhase() {
+            return phase;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public int getFrameCount() {
+            return frameNanos.length;
+        }
+
+        public int getDroppedFrameCount() {
+            return droppedFrames;
+        }
+
+        /**
+         * Returns the frame time below which {@code percentile} percent of the frames fall,
+         * by nearest rank, or 0 when the phase has no frames.
+         */
+        public long getFrameTimePercentileNanos(int percentile) {
+            if (frameNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100f * frameNanos.length);
+            return frameNanos[Math.max(0, Math.min(frameNanos.length - 1, rank - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return getPhaseName(phase) + "{duration=" + durationNanos / 1000000f + "ms"
+                    + ", frames=" + frameNanos.length
+                    + ", dropped=" + droppedFrames
+                    + ", p50=" + getFrameTimePercentileNanos(50) / 1000000f + "ms"
+                    + ", p90=" + getFrameTimePercentileNanos(90) / 1000000f + "ms"
+                    + ", p99=" + getFrameTimePercentileNanos(99) / 1000000f + "ms}";
+        }
+    }
+}
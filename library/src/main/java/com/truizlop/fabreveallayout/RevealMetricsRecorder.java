@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times the frames of one transition with the frame clock. Phase boundaries are placed at the
+ * last frame time too, so phase durations and frame times come from the same clock. Only
+ * exists while a metrics listener is set, so transitions without one don't post frame
+ * callbacks.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class RevealMetricsRecorder implements Choreographer.FrameCallback {
+
+    private final long refreshPeriodNanos;
+    private final List<RevealMetrics.Phase> phases = new ArrayList<>();
+    private long[] frameNanos = new long[32];
+    private int frameCount = 0;
+    private int phase = -1;
+    private long phaseStartNanos;
+    private long lastFrameNanos;
+    private boolean recording = false;
+
+    RevealMetricsRecorder(long refreshPeriodNanos) {
+        this.refreshPeriodNanos = refreshPeriodNanos;
+    }
+
+    boolean isRecording() {
+        return recording;
+    }
+
+    void start() {
+        phases.clear();
+        phase = -1;
+        recording = true;
+        lastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void beginPhase(int phase) {
+        endPhase();
+        this.phase = phase;
+        /* Before the first frame there is no frame time yet, so that frame starts the phase */
+        phaseStartNanos = lastFrameNanos;
+    }
+
+    RevealMetrics finish(int index, boolean revealed) {
+        endPhase();
+        recording = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        return new RevealMetrics(index, revealed, phases);
+    }
+
+    private void endPhase() {
+        if (phase != -1) {
+            long durationNanos = phaseStartNanos != 0 ? lastFrameNanos - phaseStartNanos : 0;
+            phases.add(new RevealMetrics.Phase(phase, durationNanos,
+                    Arrays.copyOf(frameNanos, frameCount), refreshPeriodNanos));
+        }
+        phase = -1;
+        frameCount = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!recording) {
+            return;
+        }
+        if (phase != -1 && phaseStartNanos == 0) {
+            phaseStartNanos = frameTimeNanos;
+        }
+        if (lastFrameNanos != 0 && phase != -1) {
+            if (frameCount == frameNanos.length) {
+                frameNanos = Arrays.copyOf(frameNanos, 2 * frameCount);
+            }
+            frameNanos[frameCount++] = frameTimeNanos - lastFrameNanos;
+        }
+        lastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright (C) 2015 Tomás Ruiz-López.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.truizlop.fabreveallayout;
+
+import android.animation.ValueAnimator;
+import android.app.Activity;
+import android.content.Context;
+import android.database.DataSetObserver;
+import android.graphics.Rect;
+import android.os.Parcelable;
+import android.support.design.widget.FloatingActionButton;
+import android.util.SparseArray;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.FrameLayout;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Steps reveals frame by frame on a paused main looper and checks what each transition costs
+ * in layout passes and invalidations, and where the views end up.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FABRevealLayoutFrameTest {
+
+    private static final int FAB_COUNT = 4;
+    private static final int FRAME_MS = 16;
+    private static final int MAX_FRAMES = 200;
+    private static final int FADE_FRAMES = 40;
+    private static final int ADAPTER_COUNT = 6;
+    private static final int LARGE_ADAPTER_COUNT = 500;
+    private static final int BOUNDARY_INVALIDATIONS = 4;
+    private static final int ALLOCATION_FRAMES = 60;
+
+    private Scheduler scheduler;
+    private Activity activity;
+    private Context context;
+    private CountingFABRevealLayout layout;
+    private FloatingActionButton[] fabs = new FloatingActionButton[FAB_COUNT];
+    private View[] mainViews = new View[FAB_COUNT];
+    private View[] secondaryViews = new View[FAB_COUNT];
+    private int settledCount = 0;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.setupActivity(Activity.class);
+        context = new ContextThemeWrapper(activity, R.style.Theme_AppCompat_Light);
+        attachLayout();
+
+        scheduler = Robolectric.getForegroundThreadScheduler();
+        scheduler.pause();
+        stepFrames(2);
+    }
+
+    private void attachLayout() {
+        layout = new CountingFABRevealLayout(context);
+        layout.setNativeRevealEnabled(false);
+        for (int i = 0; i < FAB_COUNT; i++) {
+            fabs[i] = new FloatingActionButton(context);
+            mainViews[i] = new FrameLayout(context);
+            secondaryViews[i] = new FrameLayout(context);
+            layout.addView(fabs[i]);
+            layout.addView(mainViews[i], new ViewGroup.MarginLayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            layout.addView(secondaryViews[i], new ViewGroup.MarginLayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        }
+        layout.setOnRevealChangeListener(settleCounter);
+        activity.setContentView(layout, new ViewGroup.LayoutParams(480, 800));
+    }
+
+    private void attachLayout(FABRevealAdapter adapter) {
+        layout = new CountingFABRevealLayout(context);
+        layout.setNativeRevealEnabled(false);
+        layout.setAdapter(adapter);
+        layout.setOnRevealChangeListener(settleCounter);
+        activity.setContentView(layout, new ViewGroup.LayoutParams(480, 800));
+    }
+
+    private final OnRevealChangeListener settleCounter = new OnRevealChangeListener() {
+        @Override
+        public void onMainViewAppeared(FABRevealLayout fabRevealLayout, View mainView) {
+            settledCount++;
+        }
+
+        @Override
+        public void onSecondaryViewAppeared(FABRevealLayout fabRevealLayout, View secondaryView) {
+            settledCount++;
+        }
+    };
+
+    @Test
+    public void revealEndsOnTheSecondaryView() {
+        layout.revealSecondaryView(1);
+        stepUntilSettled();
+
+        assertEquals(View.GONE, mainViews[1].getVisibility());
+        assertEquals(View.VISIBLE, secondaryViews[1].getVisibility());
+        assertEquals(1f, secondaryViews[1].getAlpha(), 0);
+        assertEquals(View.GONE, fabs[1].getVisibility());
+        for (int i = 0; i < FAB_COUNT; i++) {
+            if (i != 1) {
+                assertEquals(0f, fabs[i].getAlpha(), 0);
+                assertFalse(fabs[i].isClickable());
+                assertEquals(View.VISIBLE, mainViews[i].getVisibility());
+            }
+        }
+    }
+
+    @Test
+    public void hideEndsOnTheMainView() {
+        layout.revealSecondaryView(1);
+        stepUntilSettled();
+        layout.revealMainView(1);
+        stepUntilSettled();
+
+        assertMainViewsShown();
+    }
+
+    @Test
+    public void reversedRevealReturnsFromWhereItWas() {
+        layout.revealSecondaryView(2);
+        stepFrames(5);
+        layout.revealMainView(2);
+        int frames = stepUntilSettled() - FADE_FRAMES;
+
+        assertMainViewsShown();
+        assertEquals(1, settledCount);
+        assertTrue("Took " + frames + " frames to return", frames <= 10);
+    }
+
+    /**
+     * Only the phase boundaries change visibilities, so a reveal lays out once when the circle
+     * starts and once when the views are swapped. Every other frame only redraws.
+     */
+    @Test
+    public void revealOnlyLaysOutOnPhaseBoundaries() {
+        layout.resetCounters();
+        layout.revealSecondaryView(0);
+        stepUntilSettled();
+        assertTrue("Laid out " + layout.layoutPasses + " times", layout.layoutPasses <= 3);
+
+        layout.resetCounters();
+        layout.revealMainView(0);
+        stepUntilSettled();
+        assertTrue("Laid out " + layout.layoutPasses + " times", layout.layoutPasses <= 3);
+    }
+
+    /**
+     * A travel frame may invalidate the travelling FAB, the unused FABs and the fading main
+     * view. An expansion frame may only invalidate the overlay and the fading secondary view.
+     * Phase boundaries also invalidate the views whose visibility changes.
+     */
+    @Test
+    public void revealInvalidatesABoundedAreaPerFrame() {
+        layout.resetCounters();
+        layout.revealSecondaryView(0);
+        int travelFrames = 0;
+        while (fabs[0].getVisibility() == View.VISIBLE && travelFrames < MAX_FRAMES) {
+            stepFrames(1);
+            travelFrames++;
+        }
+        int maxTravelInvalidations = travelFrames * (FAB_COUNT + 1) + BOUNDARY_INVALIDATIONS;
+        assertTrue("Invalidated " + layout.invalidations + " times in " + travelFrames + " travel frames",
+                layout.invalidations <= maxTravelInvalidations);
+
+        layout.resetCounters();
+        int expandFrames = stepUntilSettled() - FADE_FRAMES;
+        int maxExpandInvalidations = expandFrames * 2 + BOUNDARY_INVALIDATIONS;
+        assertTrue("Invalidated " + layout.invalidations + " times in " + expandFrames + " expansion frames",
+                layout.invalidations <= maxExpandInvalidations);
+    }
+
+    /**
+     * Drives the update listeners of every phase directly, off the animation clock, so only
+     * the per-frame pipeline is measured. It may allocate no more than the framework setters
+     * it ends up calling do on their own.
+     */
+    @Test
+    public void revealFramesDoNotAllocate() {
+        AllocationMeter meter = new AllocationMeter();
+        /* A first reveal sets up the path, views and alphas the listeners read */
+        layout.revealSecondaryView(0);
+        stepUntilSettled();
+        final FABRevealLayout.RevealAnimators animators = layout.getRevealAnimators(0);
+        final View overlay = layout.getChildAt(0);
+        final SteppedAnimator animator = new SteppedAnimator();
+        for (int i = 0; i < 100; i++) {
+            runPipelineFrames(animators, animator);
+            runFrameworkFrames(overlay);
+        }
+
+        long framework = meter.measure(new Runnable() {
+            @Override
+            public void run() {
+                runFrameworkFrames(overlay);
+            }
+        });
+        long pipeline = meter.measure(new Runnable() {
+            @Override
+            public void run() {
+                runPipelineFrames(animators, animator);
+            }
+        });
+
+        assertTrue("Allocated " + pipeline + " bytes in " + ALLOCATION_FRAMES + " frames, the framework "
+                + framework, pipeline <= framework);
+    }
+
+    private void runPipelineFrames(FABRevealLayout.RevealAnimators animators, SteppedAnimator animator) {
+        for (int frame = 0; frame <= ALLOCATION_FRAMES; frame++) {
+            animator.fraction = (float) frame / ALLOCATION_FRAMES;
+            animators.travelUpdateListener.onAnimationUpdate(animator);
+            animators.circleUpdateListener.onAnimationUpdate(animator);
+            layout.unusedFABsUpdateListener.onAnimationUpdate(animator);
+        }
+    }
+
+    /**
+     * The same setters the listeners call, on the same views, with no pipeline around them.
+     */
+    private void runFrameworkFrames(View overlay) {
+        for (int frame = 0; frame <= ALLOCATION_FRAMES; frame++) {
+            float fraction = (float) frame / ALLOCATION_FRAMES;
+            fabs[0].setX(fraction);
+            fabs[0].setY(fraction);
+            mainViews[0].setAlpha(1 - fraction);
+            overlay.invalidate(0, 0, 1, 1);
+            secondaryViews[0].setAlpha(fraction);
+            for (int i = 1; i < FAB_COUNT; i++) {
+                fabs[i].setAlpha(fraction);
+            }
+        }
+    }
+
+    @Test
+    public void restoreJumpsToTheRevealedStateInOneLayoutPass() {
+        layout.revealSecondaryView(1);
+        stepUntilSettled();
+        Parcelable state = layout.onSaveInstanceState();
+
+        attachLayout();
+        layout.onRestoreInstanceState(state);
+        stepFrames(2);
+
+        assertEquals(1, layout.layoutPasses);
+        assertEquals(View.GONE, mainViews[1].getVisibility());
+        assertEquals(View.VISIBLE, secondaryViews[1].getVisibility());
+        assertEquals(View.GONE, fabs[1].getVisibility());
+        for (int i = 0; i < FAB_COUNT; i++) {
+            if (i != 1) {
+                assertEquals(0f, fabs[i].getAlpha(), 0);
+                assertEquals(View.GONE, secondaryViews[i].getVisibility());
+            }
+        }
+    }
+
+    /**
+     * Before the first layout no FAB is bound yet, so the restored indices wait for the
+     * measure pass that binds them.
+     */
+    @Test
+    public void adapterRestoreJumpsToTheRevealedStateInOneLayoutPass() {
+        attachLayout(new TestAdapter(ADAPTER_COUNT));
+        stepFrames(2);
+        layout.revealSecondaryView(3);
+        stepUntilSettled();
+        Parcelable state = layout.onSaveInstanceState();
+
+        TestAdapter adapter = new TestAdapter(ADAPTER_COUNT);
+        attachLayout(adapter);
+        layout.onRestoreInstanceState(state);
+        stepFrames(2);
+
+        assertEquals(1, layout.layoutPasses);
+        assertEquals(ADAPTER_COUNT, countFABs());
+        assertEquals(View.GONE, adapter.mainViews.get(3).getVisibility());
+        assertEquals(View.VISIBLE, adapter.secondaryViews.get(3).getVisibility());
+        for (int position = 0; position < ADAPTER_COUNT; position++) {
+            if (position != 3) {
+                assertEquals(View.VISIBLE, adapter.mainViews.get(position).getVisibility());
+            }
+        }
+    }
+
+    @Test
+    public void parallelHideKeepsTheOverlayOfAnotherRevealedIndex() {
+        layout.setRevealPolicy(FABRevealLayout.REVEAL_POLICY_PARALLEL);
+        layout.revealSecondaryView(0);
+        stepUntilSettled();
+        layout.revealSecondaryView(1);
+        stepUntilSettled();
+        layout.revealMainView(1);
+        stepUntilSettled();
+
+        View overlay = layout.getChildAt(0);
+        assertEquals(View.VISIBLE, overlay.getVisibility());
+        assertEquals(1f, overlay.getAlpha(), 0);
+        assertEquals(View.VISIBLE, secondaryViews[0].getVisibility());
+        assertEquals(View.VISIBLE, mainViews[1].getVisibility());
+    }
+
+    @Test
+    public void minimalProfileSwapsTheViewsInOneLayoutPass() {
+        layout.setPerformanceProfile(FABRevealLayout.PERFORMANCE_PROFILE_MINIMAL);
+        layout.resetCounters();
+        layout.revealSecondaryView(1);
+
+        assertEquals(1, settledCount);
+        assertEquals(View.GONE, mainViews[1].getVisibility());
+        assertEquals(View.VISIBLE, secondaryViews[1].getVisibility());
+        assertEquals(0, RevealCoordinator.getInstance().getRunningTransitionCount());
+        stepFrames(2);
+        assertEquals(1, layout.layoutPasses);
+
+        layout.revealMainView(1);
+        assertEquals(2, settledCount);
+        assertMainViewsShown();
+    }
+
+    @Test
+    public void coordinatorSettlesTheOldestRevealOverTheLimit() {
+        RevealCoordinator coordinator = RevealCoordinator.getInstance();
+        int maxRunningTransitions = coordinator.getMaxRunningTransitions();
+        coordinator.setMaxRunningTransitions(1);
+        try {
+            layout.setRevealPolicy(FABRevealLayout.REVEAL_POLICY_PARALLEL);
+            layout.revealSecondaryView(0);
+            stepFrames(2);
+            layout.revealSecondaryView(1);
+
+            assertEquals(View.VISIBLE, secondaryViews[0].getVisibility());
+            assertEquals(View.GONE, fabs[0].getVisibility());
+            assertEquals(1, coordinator.getRunningTransitionCount());
+
+            stepUntilSettled();
+            assertEquals(View.VISIBLE, secondaryViews[1].getVisibility());
+            assertEquals(0, coordinator.getRunningTransitionCount());
+        } finally {
+            coordinator.setMaxRunningTransitions(maxRunningTransitions);
+        }
+    }
+
+    @Test
+    public void detachingSettlesRunningReveals() {
+        layout.revealSecondaryView(3);
+        stepFrames(5);
+        activity.setContentView(new FrameLayout(activity));
+
+        assertEquals(View.GONE, mainViews[3].getVisibility());
+        assertEquals(View.VISIBLE, secondaryViews[3].getVisibility());
+        assertEquals(0, RevealCoordinator.getInstance().getRunningTransitionCount());
+    }
+
+    @Test
+    public void adapterIsBoundInTheFirstLayoutPass() {
+        attachLayout(new TestAdapter(ADAPTER_COUNT));
+        stepFrames(2);
+
+        assertEquals(1, layout.layoutPasses);
+        assertEquals(ADAPTER_COUNT, countFABs());
+    }
+
+    /**
+     * A wrap_content row in a vertical list measures the layout without a height bound, which
+     * must not bind a FAB for every item.
+     */
+    @Test
+    public void unboundedMeasureBindsABoundedNumberOfFABs() {
+        layout = new CountingFABRevealLayout(context);
+        layout.setAdapter(new TestAdapter(LARGE_ADAPTER_COUNT));
+        layout.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        assertEquals(FABRevealLayout.DEFAULT_ADAPTER_CAPACITY, countFABs());
+
+        layout.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(800, View.MeasureSpec.EXACTLY));
+        int boundedCount = countFABs();
+        layout.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        assertEquals(boundedCount, countFABs());
+        assertTrue(boundedCount < LARGE_ADAPTER_COUNT);
+    }
+
+    @Test
+    public void adapterIsOnlyObservedWhileAttached() {
+        TestAdapter adapter = new TestAdapter(ADAPTER_COUNT);
+        attachLayout(adapter);
+        stepFrames(2);
+        assertEquals(1, adapter.observers);
+
+        activity.setContentView(new FrameLayout(activity));
+        assertEquals(0, adapter.observers);
+
+        activity.setContentView(layout);
+        assertEquals(1, adapter.observers);
+    }
+
+    private int countFABs() {
+        int fabCount = 0;
+        for (int i = 0; i < layout.getChildCount(); i++) {
+            if (layout.getChildAt(i) instanceof FloatingActionButton) {
+                fabCount++;
+            }
+        }
+        return fabCount;
+    }
+
+    private void assertMainViewsShown() {
+        for (int i = 0; i < FAB_COUNT; i++) {
+            assertEquals(View.VISIBLE, mainViews[i].getVisibility());
+            assertEquals(1f, mainViews[i].getAlpha(), 0);
+            assertEquals(View.GONE, secondaryViews[i].getVisibility());
+            assertEquals(View.VISIBLE, fabs[i].getVisibility());
+            assertEquals(1f, fabs[i].getAlpha(), 0);
+            assertTrue(fabs[i].isClickable());
+        }
+    }
+
+    private void stepFrames(int frames) {
+        for (int i = 0; i < frames; i++) {
+            scheduler.advanceBy(FRAME_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the frames stepped, including the ones left for the unused FABs to fade.
+     */
+    private int stepUntilSettled() {
+        int settled = settledCount;
+        int frames = 0;
+        while (settledCount == settled && frames < MAX_FRAMES) {
+            stepFrames(1);
+            frames++;
+        }
+        assertTrue("Didn't settle in " + MAX_FRAMES + " frames", settledCount > settled);
+        /* Let the unused FABs finish fading */
+        stepFrames(FADE_FRAMES);
+        return frames + FADE_FRAMES;
+    }
+
+    /**
+     * Reports a fraction set by the test instead of one computed from the animation clock.
+     */
+    private static class SteppedAnimator extends ValueAnimator {
+
+        float fraction = 0;
+
+        @Override
+        public float getAnimatedFraction() {
+            return fraction;
+        }
+    }
+
+    private static class TestAdapter extends FABRevealAdapter {
+
+        final SparseArray<View> mainViews = new SparseArray<>();
+        final SparseArray<View> secondaryViews = new SparseArray<>();
+        private final int count;
+        int observers = 0;
+
+        TestAdapter(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public void onBindFAB(FloatingActionButton fab, int position) {
+        }
+
+        @Override
+        public View getMainView(int position, View convertView, ViewGroup parent) {
+            View view = convertView != null ? convertView : new FrameLayout(parent.getContext());
+            mainViews.put(position, view);
+            return view;
+        }
+
+        @Override
+        public View getSecondaryView(int position, View convertView, ViewGroup parent) {
+            View view = convertView != null ? convertView : new FrameLayout(parent.getContext());
+            secondaryViews.put(position, view);
+            return view;
+        }
+
+        @Override
+        public void registerDataSetObserver(DataSetObserver observer) {
+            super.registerDataSetObserver(observer);
+            observers++;
+        }
+
+        @Override
+        public void unregisterDataSetObserver(DataSetObserver observer) {
+            super.unregisterDataSetObserver(observer);
+            observers--;
+        }
+    }
+
+    private static class CountingFABRevealLayout extends FABRevealLayout {
+
+        int layoutPasses = 0;
+        int invalidations = 0;
+
+        CountingFABRevealLayout(Context context) {
+            super(context);
+        }
+
+        void resetCounters() {
+            layoutPasses = 0;
+            invalidations = 0;
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int l, int t, int r, int b) {
+            layoutPasses++;
+            super.onLayout(changed, l, t, r, b);
+        }
+
+        @Override
+        public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+            invalidations++;
+            return super.invalidateChildInParent(location, dirty);
+        }
+    }
+}